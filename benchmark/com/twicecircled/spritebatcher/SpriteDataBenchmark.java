@@ -0,0 +1,253 @@
+/* Sprite Batcher V1.31
+   Copyright (c) 2013 Tim Wicksteed <tim@twicecircled.com>
+   http:/www.twicecircled.com
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+
+package com.twicecircled.spritebatcher;
+
+public class SpriteDataBenchmark {
+	// Micro-benchmark for the per sprite cost of SpriteData.addSprite. Not
+	// part of the library, it lives outside src and runs as a plain main()
+	// on a desktop JVM. It sits in the library's package so it can reach the
+	// protected methods. From the project root:
+	//
+	// javac -cp <sdk>/platforms/android-17/android.jar -d bin/benchmark \
+	//     src/com/twicecircled/spritebatcher/*.java \
+	//     benchmark/com/twicecircled/spritebatcher/*.java
+	// java -cp bin/benchmark com.twicecircled.spritebatcher.SpriteDataBenchmark
+	//
+	// android.jar is only needed to compile, none of the code timed here
+	// touches an Android class. "Before" is the rotation as it was prior to
+	// TrigTable, copied into Legacy below: Math.cos and Math.sin in double
+	// precision for every sprite, even unrotated ones. "After" is the
+	// current SpriteData. Both write the same interleaved vertices with
+	// culling off.
+
+	private static final int SPRITES = 10000; // Sprites per pass
+	private static final int WARMUP_PASSES = 200;
+	private static final int PASSES = 500;
+
+	// Stops the JIT throwing the work away
+	private static int sink;
+
+	public static void main(String[] args) {
+		System.out.println("ns per sprite, " + SPRITES + " sprites x "
+				+ PASSES + " passes");
+		report("simple, angle 0", runSimple(0), runLegacySimple(0));
+		report("simple, rotated", runSimple(37), runLegacySimple(37));
+		report("hot rect, angle 0", runHot(0), runLegacyHot(0));
+		report("hot rect, rotated", runHot(37), runLegacyHot(37));
+		if (sink == 42) {
+			System.out.println();
+		}
+	}
+
+	private static void report(String name, double after, double before) {
+		System.out.println(String.format("%-18s before %6.1f  after %6.1f",
+				name, before, after));
+	}
+
+	// AFTER
+	private static double runSimple(int angle) {
+		SpriteData data = newSpriteData();
+		for (int i = 0; i < WARMUP_PASSES; i++) {
+			simplePass(data, angle);
+		}
+		long start = System.nanoTime();
+		for (int i = 0; i < PASSES; i++) {
+			simplePass(data, angle);
+		}
+		return perSprite(System.nanoTime() - start);
+	}
+
+	private static void simplePass(SpriteData data, int angle) {
+		data.clear();
+		for (int i = 0; i < SPRITES; i++) {
+			int x = i & 511;
+			int y = i >> 5;
+			data.addSprite(0, 0, 32, 32, x, y, 32, 32, angle, 0xffffffff);
+		}
+		sink += data.getVertexCount();
+	}
+
+	private static double runHot(int angle) {
+		SpriteData data = newSpriteData();
+		for (int i = 0; i < WARMUP_PASSES; i++) {
+			hotPass(data, angle);
+		}
+		long start = System.nanoTime();
+		for (int i = 0; i < PASSES; i++) {
+			hotPass(data, angle);
+		}
+		return perSprite(System.nanoTime() - start);
+	}
+
+	private static void hotPass(SpriteData data, int angle) {
+		data.clear();
+		for (int i = 0; i < SPRITES; i++) {
+			int x = i & 511;
+			int y = i >> 5;
+			data.addSprite(0, 0, 32, 32, x, y, -16, -16, 16, 16, angle, 1.5f,
+					1.5f, 0xffffffff);
+		}
+		sink += data.getVertexCount();
+	}
+
+	private static SpriteData newSpriteData() {
+		SpriteData data = new SpriteData();
+		data.setDimensions(256, 256);
+		return data;
+	}
+
+	// BEFORE
+	private static double runLegacySimple(int angle) {
+		Legacy data = new Legacy();
+		for (int i = 0; i < WARMUP_PASSES; i++) {
+			legacySimplePass(data, angle);
+		}
+		long start = System.nanoTime();
+		for (int i = 0; i < PASSES; i++) {
+			legacySimplePass(data, angle);
+		}
+		return perSprite(System.nanoTime() - start);
+	}
+
+	private static void legacySimplePass(Legacy data, int angle) {
+		data.vertexCount = 0;
+		for (int i = 0; i < SPRITES; i++) {
+			int x = i & 511;
+			int y = i >> 5;
+			data.addSprite(0, 0, 32, 32, x, y, 32, 32, angle, 0xffffffff);
+		}
+		sink += data.vertexCount;
+	}
+
+	private static double runLegacyHot(int angle) {
+		Legacy data = new Legacy();
+		for (int i = 0; i < WARMUP_PASSES; i++) {
+			legacyHotPass(data, angle);
+		}
+		long start = System.nanoTime();
+		for (int i = 0; i < PASSES; i++) {
+			legacyHotPass(data, angle);
+		}
+		return perSprite(System.nanoTime() - start);
+	}
+
+	private static void legacyHotPass(Legacy data, int angle) {
+		data.vertexCount = 0;
+		for (int i = 0; i < SPRITES; i++) {
+			int x = i & 511;
+			int y = i >> 5;
+			data.addSprite(0, 0, 32, 32, x, y, -16, -16, 16, 16, angle, 1.5f,
+					1.5f, 0xffffffff);
+		}
+		sink += data.vertexCount;
+	}
+
+	private static double perSprite(long nanos) {
+		return (double) nanos / PASSES / SPRITES;
+	}
+
+	private static class Legacy {
+		// The rotated addSprite methods before TrigTable and the angle 0
+		// fast path, writing the same vertex layout as SpriteData
+
+		private int[] vertices = new int[SPRITES * SpriteData.QUAD_SIZE];
+		private int vertexCount;
+		private int textureWidth = 256;
+		private int textureHeight = 256;
+		private int colour;
+		private int lastARGB = Texture.DEFAULT_ARGB;
+		private int lastColour = SpriteData.packColour(Texture.DEFAULT_ARGB);
+
+		private void addSprite(int srcLeft, int srcTop, int srcRight,
+				int srcBottom, int dstX, int dstY, int w, int h, int angle,
+				int argb) {
+			setColour(argb);
+
+			// Width and height
+			float halfWidth = w / 2;
+			float halfHeight = -h / 2;
+			float centreX = dstX + halfWidth;
+			float centreY = dstY + h + halfHeight;
+
+			// Trig
+			double cos = Math.cos((double) angle / 180 * Math.PI);
+			double sin = Math.sin((double) angle / 180 * Math.PI);
+
+			float[] hotX = { -halfWidth, -halfWidth, halfWidth, halfWidth };
+			float[] hotY = { halfHeight, -halfHeight, -halfHeight,
+					halfHeight };
+			float[] srcX = { srcLeft, srcLeft, srcRight, srcRight };
+			float[] srcY = { srcTop, srcBottom, srcBottom, srcTop };
+
+			for (int i = 0; i < 4; i++) {
+				float x = (float) (cos * hotX[i] - sin * hotY[i]) + centreX;
+				float y = (float) (sin * hotX[i] + cos * hotY[i]) + centreY;
+				addVertex(x, y, srcX[i] / textureWidth, srcY[i]
+						/ textureHeight);
+			}
+		}
+
+		private void addSprite(int srcLeft, int srcTop, int srcRight,
+				int srcBottom, int drawX, int drawY, int hotLeft, int hotTop,
+				int hotRight, int hotBottom, int angle, float sizeX,
+				float sizeY, int argb) {
+			setColour(argb);
+
+			// Trig
+			double cos = Math.cos((double) angle / 180 * Math.PI);
+			double sin = Math.sin((double) angle / 180 * Math.PI);
+
+			// Coordinates before rotation
+			float[] hotX = { hotLeft, hotLeft, hotRight, hotRight };
+			float[] hotY = { hotTop, hotBottom, hotBottom, hotTop };
+
+			// TEXTURE COORDS
+			float[] srcX = { srcLeft + 0.5f, srcLeft + 0.5f, srcRight - 0.5f,
+					srcRight - 0.5f };
+			float[] srcY = { srcTop + 0.5f, srcBottom - 0.5f,
+					srcBottom - 0.5f, srcTop + 0.5f };
+
+			for (int i = 0; i < 4; i++) {
+				// Apply scale before rotation
+				float x = hotX[i] * sizeX;
+				float y = hotY[i] * sizeY;
+				// Coordinates after rotation
+				float transformedX = (float) (cos * x - sin * y);
+				float transformedY = (float) (sin * x + cos * y);
+				addVertex(transformedX + drawX, transformedY + drawY, srcX[i]
+						/ textureWidth, srcY[i] / textureHeight);
+			}
+		}
+
+		private void setColour(int argb) {
+			if (argb != lastARGB) {
+				lastARGB = argb;
+				lastColour = SpriteData.packColour(argb);
+			}
+			colour = lastColour;
+		}
+
+		private void addVertex(float x, float y, float u, float v) {
+			vertices[vertexCount++] = Float.floatToRawIntBits(x);
+			vertices[vertexCount++] = Float.floatToRawIntBits(y);
+			vertices[vertexCount++] = Float.floatToRawIntBits(u);
+			vertices[vertexCount++] = Float.floatToRawIntBits(v);
+			vertices[vertexCount++] = colour;
+		}
+	}
+}
@@ -0,0 +1,108 @@
+/* Sprite Batcher V1.31
+   Copyright (c) 2013 Tim Wicksteed <tim@twicecircled.com>
+   http:/www.twicecircled.com
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+
+package com.twicecircled.spritebatcher;
+
+import java.io.DataInputStream;
+import java.util.ArrayList;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+
+class AtlasPage extends Texture {
+	// One GL texture holding several packed textures (see
+	// SpriteBatcher.setAtlasPacking). Member textures send their sprites to
+	// this page's SpriteData, offset to their region, so they all go out in
+	// the same batch.
+
+	private int pageWidth;
+	private int pageHeight;
+
+	private ArrayList<Texture> members = new ArrayList<Texture>();
+	// Bitmaps already decoded while packing, used for the first upload so
+	// they do not have to be decoded twice
+	private ArrayList<Bitmap> packedBitmaps = new ArrayList<Bitmap>();
+
+	protected AtlasPage(int pageWidth, int pageHeight) {
+		this.pageWidth = pageWidth;
+		this.pageHeight = pageHeight;
+	}
+
+	protected void addMember(Texture texture, int x, int y, Bitmap bitmap) {
+		texture.setAtlas(this, x, y);
+		texture.setDimensions(bitmap.getWidth(), bitmap.getHeight());
+		members.add(texture);
+		packedBitmaps.add(bitmap);
+	}
+
+	protected ArrayList<Texture> getMembers() {
+		return members;
+	}
+
+	// Same members in the same places give the same page
+	@Override
+	protected String getCacheKey() {
+		StringBuilder key = new StringBuilder("atlas:").append(pageWidth)
+				.append('x').append(pageHeight);
+		for (int i = 0; i < members.size(); i++) {
+			Texture member = members.get(i);
+			String memberKey = member.getCacheKey();
+			if (memberKey == null) {
+				return null;
+			}
+			key.append(';').append(memberKey).append('@')
+					.append(member.atlasX).append(',').append(member.atlasY);
+		}
+		return key.toString();
+	}
+
+	// Page came from the cache, the bitmaps decoded while packing are not
+	// needed
+	@Override
+	protected void readCacheExtras(DataInputStream in) {
+		for (int i = 0; i < packedBitmaps.size(); i++) {
+			releaseBitmap(packedBitmaps.get(i));
+		}
+		packedBitmaps.clear();
+	}
+
+	@Override
+	protected Bitmap getBitmap(Context context) {
+		// Draw every member into its region of one page sized bitmap
+		Bitmap page = createBitmap(pageWidth, pageHeight,
+				Bitmap.Config.ARGB_8888);
+		page.eraseColor(0x00000000);
+		Canvas canvas = new Canvas(page);
+		for (int i = 0; i < members.size(); i++) {
+			Texture member = members.get(i);
+			Bitmap bitmap;
+			if (packedBitmaps.isEmpty()) {
+				// Reloading after the GL context was lost
+				bitmap = member.getBitmap(context);
+			} else {
+				bitmap = packedBitmaps.get(i);
+			}
+			if (bitmap != null) {
+				canvas.drawBitmap(bitmap, member.atlasX, member.atlasY, null);
+				releaseBitmap(bitmap);
+			}
+		}
+		packedBitmaps.clear();
+		return page;
+	}
+}
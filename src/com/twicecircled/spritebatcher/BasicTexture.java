@@ -16,6 +16,8 @@
  */
 package com.twicecircled.spritebatcher;
 
+import java.io.InputStream;
+
 import android.content.Context;
 import android.graphics.Bitmap;
 import android.graphics.BitmapFactory;
@@ -27,8 +29,35 @@ public class BasicTexture extends Texture {
 		this.bitmapId = bitmapId;
 	}
 
+	@Override
+	protected boolean isAtlasCandidate() {
+		return true;
+	}
+
+	@Override
+	protected boolean canDownsample() {
+		return true;
+	}
+
+	@Override
+	protected String getCacheKey() {
+		return "res:" + bitmapId + ":" + sampleSize;
+	}
+
+	// Raw file, without the density scaling decodeResource() applies
+	@Override
+	protected InputStream openStream(Context context) {
+		return context.getResources().openRawResource(bitmapId);
+	}
+
+	@Override
+	protected Bitmap decode(Context context, BitmapFactory.Options options) {
+		return BitmapFactory.decodeResource(context.getResources(), bitmapId,
+				options);
+	}
+
 	@Override
 	protected Bitmap getBitmap(Context context) {
-		return BitmapFactory.decodeResource(context.getResources(), bitmapId);
+		return decodePooled(context);
 	}
 }
@@ -0,0 +1,137 @@
+/* Sprite Batcher V1.31
+   Copyright (c) 2013 Tim Wicksteed <tim@twicecircled.com>
+   http:/www.twicecircled.com
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+
+package com.twicecircled.spritebatcher;
+
+import java.util.ArrayList;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.os.Build;
+
+class BitmapPool {
+	// Bitmaps finished with after upload, kept so the next texture of the
+	// same size and config is decoded into one through
+	// BitmapFactory.Options.inBitmap instead of allocating a new one, see
+	// SpriteBatcher.setBitmapPool(). Loading many textures then reuses a
+	// few large allocations rather than churning the heap and triggering
+	// GC. Shared by the GL thread and the loader threads.
+
+	// Build.VERSION_CODES.KITKAT, not in the SDK this library builds against
+	private static final int KITKAT = 19;
+
+	// Oldest first
+	private ArrayList<Bitmap> bitmaps = new ArrayList<Bitmap>();
+	private long maxBytes;
+	private long bytes;
+	private int hits;
+	private int misses;
+
+	protected BitmapPool(long maxBytes) {
+		this.maxBytes = maxBytes;
+	}
+
+	// Removes and returns a pooled bitmap of exactly this size and config,
+	// with whatever pixels it had, or null
+	protected synchronized Bitmap get(int width, int height,
+			Bitmap.Config config) {
+		for (int i = bitmaps.size() - 1; i >= 0; i--) {
+			Bitmap bitmap = bitmaps.get(i);
+			if (bitmap.getWidth() == width && bitmap.getHeight() == height
+					&& bitmap.getConfig() == config) {
+				bitmaps.remove(i);
+				bytes -= getBytes(bitmap);
+				hits++;
+				return bitmap;
+			}
+		}
+		misses++;
+		return null;
+	}
+
+	// Pooled bitmap or a new one, either way cleared to transparent
+	protected Bitmap create(int width, int height, Bitmap.Config config) {
+		Bitmap bitmap = get(width, height, config);
+		if (bitmap == null) {
+			return Bitmap.createBitmap(width, height, config);
+		}
+		bitmap.eraseColor(0x00000000);
+		return bitmap;
+	}
+
+	// Takes a bitmap that is no longer needed, recycling it if it cannot be
+	// reused or there is no room. The oldest are recycled to make room.
+	protected synchronized void put(Bitmap bitmap) {
+		if (bitmap == null || bitmap.isRecycled()) {
+			return;
+		}
+		long size = getBytes(bitmap);
+		if (!bitmap.isMutable() || size > maxBytes) {
+			bitmap.recycle();
+			return;
+		}
+		bitmaps.add(bitmap);
+		bytes += size;
+		while (bytes > maxBytes) {
+			Bitmap oldest = bitmaps.remove(0);
+			bytes -= getBytes(oldest);
+			oldest.recycle();
+		}
+	}
+
+	// Set up options, already holding the image's bounds from an
+	// inJustDecodeBounds pass, to decode into a pooled bitmap. Decoded
+	// bitmaps are made mutable so they can be pooled in turn.
+	protected void reuse(BitmapFactory.Options options) {
+		if (Build.VERSION.SDK_INT < Build.VERSION_CODES.HONEYCOMB) {
+			// No inBitmap before Honeycomb
+			return;
+		}
+		options.inMutable = true;
+		if (options.outWidth <= 0 || options.outHeight <= 0) {
+			return;
+		}
+		// Before KitKat the sizes must match exactly and there must be no
+		// sampling. The bounds pass used the same options, so the bounds
+		// already have inSampleSize applied.
+		if (options.inSampleSize > 1 && Build.VERSION.SDK_INT < KITKAT) {
+			return;
+		}
+		options.inBitmap = get(options.outWidth, options.outHeight,
+				options.inPreferredConfig);
+	}
+
+	protected synchronized void clear() {
+		for (int i = 0; i < bitmaps.size(); i++) {
+			bitmaps.get(i).recycle();
+		}
+		bitmaps.clear();
+		bytes = 0;
+	}
+
+	protected synchronized int getHits() {
+		return hits;
+	}
+
+	protected synchronized int getMisses() {
+		return misses;
+	}
+
+	private static long getBytes(Bitmap bitmap) {
+		return (long) bitmap.getRowBytes() * bitmap.getHeight();
+	}
+}
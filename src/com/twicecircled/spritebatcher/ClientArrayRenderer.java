@@ -0,0 +1,89 @@
+/* Sprite Batcher V1.31
+   Copyright (c) 2013 Tim Wicksteed <tim@twicecircled.com>
+   http:/www.twicecircled.com
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+
+package com.twicecircled.spritebatcher;
+
+import java.nio.IntBuffer;
+import java.nio.ShortBuffer;
+
+import javax.microedition.khronos.opengles.GL10;
+
+class ClientArrayRenderer extends QuadRenderer {
+	// Default renderer, works on every GL10. Vertex data is copied into a
+	// direct buffer and handed over as a client side array, which the driver
+	// then copies again on each draw call.
+
+	private StagingBuffers stagingBuffers;
+
+	protected ClientArrayRenderer(StagingBuffers stagingBuffers) {
+		this.stagingBuffers = stagingBuffers;
+	}
+
+	@Override
+	protected void onSurfaceCreated(GL10 gl) {
+		// Nothing lives on the GPU
+	}
+
+	@Override
+	protected void begin(GL10 gl) {
+	}
+
+	@Override
+	protected void end(GL10 gl) {
+	}
+
+	@Override
+	protected void drawQuads(GL10 gl, int[] vertices, int firstQuad,
+			int quads) {
+		// FILL BUFFERS - these are just containers for sending the draw
+		// information we have already collected to OpenGL. They are reused
+		// every frame and only grow when needed.
+
+		// Interleaved vertex buffer (position, texture coordinates and colour
+		// of every vertex)
+		IntBuffer vertexBuffer = stagingBuffers.vertices(vertices, firstQuad
+				* SpriteData.QUAD_SIZE, quads * SpriteData.QUAD_SIZE);
+
+		// Index buffer (which vertices go together to make the elements).
+		// Always the same pattern so shared and prebuilt.
+		ShortBuffer indexBuffer = QuadIndices.getBuffer();
+
+		// DRAW COMMAND
+		// Specifies the location and data format of the array of vertex
+		// coordinates to use when rendering.
+		vertexBuffer.position(0);
+		gl.glVertexPointer(2, GL10.GL_FLOAT, SpriteData.STRIDE, vertexBuffer);
+		// Telling OpenGL where our textureCoords are.
+		vertexBuffer.position(SpriteData.TEXTURE_COORD_OFFSET);
+		gl.glTexCoordPointer(2, GL10.GL_FLOAT, SpriteData.STRIDE, vertexBuffer);
+		if (secondTexCoords) {
+			gl.glClientActiveTexture(GL10.GL_TEXTURE1);
+			gl.glTexCoordPointer(2, GL10.GL_FLOAT, SpriteData.STRIDE,
+					vertexBuffer);
+			gl.glClientActiveTexture(GL10.GL_TEXTURE0);
+		}
+		// And the packed r, g, b, a bytes of each vertex
+		vertexBuffer.position(SpriteData.COLOUR_OFFSET);
+		gl.glColorPointer(4, GL10.GL_UNSIGNED_BYTE, SpriteData.STRIDE,
+				vertexBuffer);
+		// Draw elements command using indices so it knows which vertices go
+		// together to form each element
+		gl.glDrawElements(GL10.GL_TRIANGLES, quads
+				* QuadIndices.INDICES_PER_QUAD, GL10.GL_UNSIGNED_SHORT,
+				indexBuffer);
+	}
+}
@@ -0,0 +1,188 @@
+/* Sprite Batcher V1.31
+   Copyright (c) 2013 Tim Wicksteed <tim@twicecircled.com>
+   http:/www.twicecircled.com
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+
+package com.twicecircled.spritebatcher;
+
+import java.util.ArrayList;
+
+import android.graphics.Bitmap;
+import android.util.Log;
+
+class DynamicAtlas {
+	// Images added and removed at runtime, packed into at most maxPages
+	// DynamicAtlasPages so the number of textures stays bounded however many
+	// images are live. Changes are queued and applied at the start of the
+	// next frame, before anything is drawn, so regions never move under
+	// sprites that have already been added.
+
+	// Gap between images so linear filtering does not bleed
+	private static final int PADDING = 2;
+
+	private int pageSize;
+	private int maxPages;
+	private Viewport viewport;
+
+	private ArrayList<DynamicAtlasPage> pages = new ArrayList<DynamicAtlasPage>();
+	// Images by slot, null once removed. Slots are reused.
+	private ArrayList<DynamicImage> images = new ArrayList<DynamicImage>();
+	private ArrayList<Integer> freeSlots = new ArrayList<Integer>();
+
+	private ArrayList<DynamicImage> pendingAdds = new ArrayList<DynamicImage>();
+	private ArrayList<DynamicImage> pendingRemoves = new ArrayList<DynamicImage>();
+
+	private SpriteLayer recordingLayer;
+	private int defragmentCount;
+
+	protected DynamicAtlas(int pageSize, int maxPages, Viewport viewport) {
+		this.pageSize = pageSize;
+		this.maxPages = maxPages;
+		this.viewport = viewport;
+	}
+
+	// Returns the slot of the new image
+	protected int add(Bitmap bitmap) {
+		DynamicImage image = new DynamicImage(bitmap);
+		image.setRecordingLayer(recordingLayer);
+		pendingAdds.add(image);
+		if (freeSlots.isEmpty()) {
+			images.add(image);
+			return images.size() - 1;
+		}
+		int slot = freeSlots.remove(freeSlots.size() - 1);
+		images.set(slot, image);
+		return slot;
+	}
+
+	// Returns false if there is no image in the slot
+	protected boolean remove(int slot) {
+		DynamicImage image = getImage(slot);
+		if (image == null) {
+			return false;
+		}
+		images.set(slot, null);
+		freeSlots.add(slot);
+		if (!pendingAdds.remove(image)) {
+			pendingRemoves.add(image);
+		}
+		return true;
+	}
+
+	protected DynamicImage getImage(int slot) {
+		if (slot >= 0 && slot < images.size()) {
+			return images.get(slot);
+		}
+		return null;
+	}
+
+	protected ArrayList<DynamicAtlasPage> getPages() {
+		return pages;
+	}
+
+	protected int getDefragmentCount() {
+		return defragmentCount;
+	}
+
+	protected void setRecordingLayer(SpriteLayer layer) {
+		recordingLayer = layer;
+		for (int i = 0; i < images.size(); i++) {
+			DynamicImage image = images.get(i);
+			if (image != null) {
+				image.setRecordingLayer(layer);
+			}
+		}
+	}
+
+	// Free the regions of removed images then place new ones. Returns true
+	// if a page was defragmented, moving images that were already placed.
+	protected boolean applyChanges() {
+		for (int i = 0; i < pendingRemoves.size(); i++) {
+			DynamicImage image = pendingRemoves.get(i);
+			if (image.isReady()) {
+				((DynamicAtlasPage) image.atlasPage).remove(image);
+			}
+		}
+		pendingRemoves.clear();
+
+		boolean moved = false;
+		for (int i = 0; i < pendingAdds.size(); i++) {
+			DynamicImage image = pendingAdds.get(i);
+			if (image.width > pageSize || image.height > pageSize) {
+				Log.e(SpriteBatcher.TAG, "Error: image of " + image.width
+						+ "x" + image.height
+						+ " is bigger than the dynamic atlas page size of "
+						+ pageSize);
+				continue;
+			}
+			if (addToExistingPage(image)) {
+				continue;
+			}
+			// The space may be there but in pieces, repack the page with the
+			// most to give back
+			if (defragmentFor(image)) {
+				moved = true;
+				if (addToExistingPage(image)) {
+					continue;
+				}
+			}
+			if (pages.size() < maxPages) {
+				DynamicAtlasPage page = new DynamicAtlasPage(pageSize,
+						pageSize, PADDING);
+				page.setViewport(viewport);
+				if (page.add(image)) {
+					pages.add(page);
+				} else {
+					Log.e(SpriteBatcher.TAG, "Error: image of " + image.width
+							+ "x" + image.height
+							+ " does not fit on an empty dynamic atlas page,"
+							+ " image will not be drawn");
+				}
+			} else {
+				Log.e(SpriteBatcher.TAG,
+						"Error: dynamic atlas is full, image will not be drawn");
+			}
+		}
+		pendingAdds.clear();
+		return moved;
+	}
+
+	private boolean addToExistingPage(DynamicImage image) {
+		for (int i = 0; i < pages.size(); i++) {
+			if (pages.get(i).add(image)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private boolean defragmentFor(DynamicImage image) {
+		int needed = (image.width + PADDING) * (image.height + PADDING);
+		DynamicAtlasPage fragmented = null;
+		for (int i = 0; i < pages.size(); i++) {
+			DynamicAtlasPage page = pages.get(i);
+			if (page.getFreeArea() >= needed
+					&& (fragmented == null || page.getFreeArea() > fragmented
+							.getFreeArea())) {
+				fragmented = page;
+			}
+		}
+		if (fragmented != null && fragmented.defragment()) {
+			defragmentCount++;
+			return true;
+		}
+		return false;
+	}
+}
@@ -0,0 +1,246 @@
+/* Sprite Batcher V1.31
+   Copyright (c) 2013 Tim Wicksteed <tim@twicecircled.com>
+   http:/www.twicecircled.com
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+
+package com.twicecircled.spritebatcher;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+
+import javax.microedition.khronos.opengles.GL10;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.opengl.GLUtils;
+
+class DynamicAtlasPage extends Texture {
+	// One GL texture shared by images added at runtime. New images go in the
+	// smallest region freed by a removed image that fits, otherwise on the
+	// skyline. Only the new image is uploaded, with glTexSubImage2D. When
+	// space is only there in pieces the page can be repacked from scratch,
+	// after which the whole page is uploaded again.
+
+	private int pageWidth;
+	private int pageHeight;
+	private int padding;
+
+	private SkylinePacker packer;
+	// Regions given back by removed images, each { x, y, width, height }
+	// including padding
+	private ArrayList<int[]> freeRects = new ArrayList<int[]>();
+	private int freeArea;
+
+	private ArrayList<DynamicImage> images = new ArrayList<DynamicImage>();
+	// Images placed since the last upload
+	private ArrayList<DynamicImage> pendingUploads = new ArrayList<DynamicImage>();
+	private boolean fullUploadNeeded = true;
+
+	private static final Comparator<DynamicImage> TALLEST_FIRST = new Comparator<DynamicImage>() {
+		@Override
+		public int compare(DynamicImage a, DynamicImage b) {
+			return b.height - a.height;
+		}
+	};
+
+	protected DynamicAtlasPage(int pageWidth, int pageHeight, int padding) {
+		this.pageWidth = pageWidth;
+		this.pageHeight = pageHeight;
+		this.padding = padding;
+		packer = new SkylinePacker(pageWidth, pageHeight, padding);
+	}
+
+	// Returns false if there is no room for the image
+	protected boolean add(DynamicImage image) {
+		int[] position = new int[2];
+		if (!allocate(image.width, image.height, position)) {
+			return false;
+		}
+		image.setAtlas(this, position[0], position[1]);
+		images.add(image);
+		pendingUploads.add(image);
+		return true;
+	}
+
+	protected void remove(DynamicImage image) {
+		images.remove(image);
+		pendingUploads.remove(image);
+		release(image.atlasX, image.atlasY, image.width + padding,
+				image.height + padding);
+		image.setAtlas(null, 0, 0);
+	}
+
+	// Area given back by removed images that has not been reused yet
+	protected int getFreeArea() {
+		return freeArea;
+	}
+
+	protected boolean isEmpty() {
+		return images.isEmpty();
+	}
+
+	// Repack every image, tallest first, into a fresh skyline. Nothing moves
+	// unless they all fit. Returns true if the images were moved.
+	protected boolean defragment() {
+		ArrayList<DynamicImage> sorted = new ArrayList<DynamicImage>(images);
+		Collections.sort(sorted, TALLEST_FIRST);
+		SkylinePacker repacked = new SkylinePacker(pageWidth, pageHeight,
+				padding);
+		int[][] positions = new int[sorted.size()][2];
+		for (int i = 0; i < sorted.size(); i++) {
+			DynamicImage image = sorted.get(i);
+			if (!repacked.insert(image.width, image.height, positions[i])) {
+				return false;
+			}
+		}
+		packer = repacked;
+		freeRects.clear();
+		freeArea = 0;
+		for (int i = 0; i < sorted.size(); i++) {
+			sorted.get(i).setAtlas(this, positions[i][0], positions[i][1]);
+		}
+		fullUploadNeeded = true;
+		return true;
+	}
+
+	protected boolean isFullUploadNeeded() {
+		return fullUploadNeeded;
+	}
+
+	// Called once the whole page has been uploaded from getBitmap()
+	protected void setUploaded() {
+		fullUploadNeeded = false;
+		pendingUploads.clear();
+	}
+
+	// Upload just the images placed since the last upload. Each goes up
+	// with its padding cleared, as a region freed by a removed image still
+	// holds that image's pixels. Drawing it through a Canvas also brings
+	// any config to the page's ARGB_8888, as the full upload does.
+	protected void uploadPending(GL10 gl) {
+		if (pendingUploads.isEmpty()) {
+			return;
+		}
+		gl.glBindTexture(GL10.GL_TEXTURE_2D, textureId);
+		for (int i = 0; i < pendingUploads.size(); i++) {
+			DynamicImage image = pendingUploads.get(i);
+			Bitmap region = Bitmap.createBitmap(
+					Math.min(image.width + padding, pageWidth - image.atlasX),
+					Math.min(image.height + padding, pageHeight
+							- image.atlasY), Bitmap.Config.ARGB_8888);
+			region.eraseColor(0x00000000);
+			new Canvas(region).drawBitmap(image.getSourceBitmap(), 0, 0, null);
+			GLUtils.texSubImage2D(GL10.GL_TEXTURE_2D, 0, image.atlasX,
+					image.atlasY, region);
+			region.recycle();
+		}
+		pendingUploads.clear();
+	}
+
+	// Images are added and moved on the GL thread
+	@Override
+	protected boolean canDecodeInBackground() {
+		return false;
+	}
+
+	// Only whole images are tracked, pages stay resident
+	@Override
+	protected boolean isEvictable() {
+		return false;
+	}
+
+	@Override
+	protected Bitmap getBitmap(Context context) {
+		// Draw every image into its region of one page sized bitmap. The
+		// images' bitmaps belong to the caller so are not recycled.
+		Bitmap page = Bitmap.createBitmap(pageWidth, pageHeight,
+				Bitmap.Config.ARGB_8888);
+		page.eraseColor(0x00000000);
+		Canvas canvas = new Canvas(page);
+		for (int i = 0; i < images.size(); i++) {
+			DynamicImage image = images.get(i);
+			canvas.drawBitmap(image.getSourceBitmap(), image.atlasX,
+					image.atlasY, null);
+		}
+		return page;
+	}
+
+	private boolean allocate(int w, int h, int[] out) {
+		int paddedW = w + padding;
+		int paddedH = h + padding;
+		// Reuse the smallest freed region the image fits in
+		int best = -1;
+		int bestArea = Integer.MAX_VALUE;
+		for (int i = 0; i < freeRects.size(); i++) {
+			int[] rect = freeRects.get(i);
+			int area = rect[2] * rect[3];
+			if (rect[2] >= paddedW && rect[3] >= paddedH && area < bestArea) {
+				best = i;
+				bestArea = area;
+			}
+		}
+		if (best == -1) {
+			return packer.insert(w, h, out);
+		}
+		int[] rect = freeRects.remove(best);
+		freeArea -= bestArea;
+		out[0] = rect[0];
+		out[1] = rect[1];
+		// Give back what is left over, split so the bigger piece stays whole
+		int rightW = rect[2] - paddedW;
+		int belowH = rect[3] - paddedH;
+		if (rightW > belowH) {
+			release(rect[0] + paddedW, rect[1], rightW, rect[3]);
+			release(rect[0], rect[1] + paddedH, paddedW, belowH);
+		} else {
+			release(rect[0] + paddedW, rect[1], rightW, paddedH);
+			release(rect[0], rect[1] + paddedH, rect[2], belowH);
+		}
+		return true;
+	}
+
+	private void release(int x, int y, int w, int h) {
+		if (w <= 0 || h <= 0) {
+			return;
+		}
+		freeArea += w * h;
+		// Join up with free neighbours that share a whole edge
+		int[] rect = new int[] { x, y, w, h };
+		int i = 0;
+		while (i < freeRects.size()) {
+			int[] other = freeRects.get(i);
+			if (other[1] == rect[1] && other[3] == rect[3]
+					&& (other[0] + other[2] == rect[0]
+					|| rect[0] + rect[2] == other[0])) {
+				rect[0] = Math.min(rect[0], other[0]);
+				rect[2] += other[2];
+			} else if (other[0] == rect[0] && other[2] == rect[2]
+					&& (other[1] + other[3] == rect[1]
+					|| rect[1] + rect[3] == other[1])) {
+				rect[1] = Math.min(rect[1], other[1]);
+				rect[3] += other[3];
+			} else {
+				i++;
+				continue;
+			}
+			// Grown, so check everything again
+			freeRects.remove(i);
+			i = 0;
+		}
+		freeRects.add(rect);
+	}
+}
@@ -0,0 +1,50 @@
+/* Sprite Batcher V1.31
+   Copyright (c) 2013 Tim Wicksteed <tim@twicecircled.com>
+   http:/www.twicecircled.com
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+
+package com.twicecircled.spritebatcher;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+
+class DynamicImage extends Texture {
+	// An image added at runtime with SpriteBatcher.addImage(). It has no GL
+	// texture of its own, it lives in a region of a DynamicAtlasPage and is
+	// only drawable once it has been given one.
+
+	// Kept so the image can be moved when its page is defragmented or put
+	// back after the GL context is lost. Owned by the caller.
+	private Bitmap bitmap;
+
+	protected DynamicImage(Bitmap bitmap) {
+		this.bitmap = bitmap;
+		setDimensions(bitmap.getWidth(), bitmap.getHeight());
+	}
+
+	protected Bitmap getSourceBitmap() {
+		return bitmap;
+	}
+
+	protected boolean isReady() {
+		return atlasPage != null;
+	}
+
+	@Override
+	protected Bitmap getBitmap(Context context) {
+		// Callers recycle what they are given, so hand out a copy
+		return bitmap.copy(bitmap.getConfig(), false);
+	}
+}
@@ -0,0 +1,99 @@
+/* Sprite Batcher V1.31
+   Copyright (c) 2013 Tim Wicksteed <tim@twicecircled.com>
+   http:/www.twicecircled.com
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+
+package com.twicecircled.spritebatcher;
+
+class Etc1Decoder {
+	// Decodes ETC1 data on the CPU, for devices without
+	// GL_OES_compressed_ETC1_RGB8_texture. Plain Java so it can be checked
+	// without a device.
+	// Each 4x4 block is 64 bits, big endian. The block is split into two
+	// halves (side by side, or one above the other if the flip bit is set)
+	// with a base colour each. Every pixel adds one of four offsets from its
+	// half's modifier table to that base colour.
+
+	private static final int[][] MODIFIERS = { { 2, 8, -2, -8 },
+			{ 5, 17, -5, -17 }, { 9, 29, -9, -29 }, { 13, 42, -13, -42 },
+			{ 18, 60, -18, -60 }, { 24, 80, -24, -80 },
+			{ 33, 106, -33, -106 }, { 47, 183, -47, -183 } };
+
+	// Decode the data following header into opaque ARGB pixels,
+	// encodedWidth * encodedHeight of them, row by row
+	protected static int[] decode(byte[] data, int offset, PkmHeader header) {
+		int width = header.encodedWidth;
+		int[] pixels = new int[width * header.encodedHeight];
+		int[] base = new int[6];
+		for (int blockY = 0; blockY < header.encodedHeight; blockY += 4) {
+			for (int blockX = 0; blockX < width; blockX += 4) {
+				long high = readInt(data, offset);
+				long low = readInt(data, offset + 4);
+				offset += 8;
+				readBaseColours(high, base);
+				int[] table1 = MODIFIERS[(int) (high >> 5) & 7];
+				int[] table2 = MODIFIERS[(int) (high >> 2) & 7];
+				boolean flip = (high & 1) != 0;
+				for (int x = 0; x < 4; x++) {
+					for (int y = 0; y < 4; y++) {
+						// Pixel indices run down each column in turn
+						int bit = x * 4 + y;
+						int index = (int) (((low >> (bit + 16)) & 1) << 1 | ((low >> bit) & 1));
+						boolean second = flip ? y >= 2 : x >= 2;
+						int modifier = second ? table2[index] : table1[index];
+						int b = second ? 3 : 0;
+						pixels[(blockY + y) * width + blockX + x] = 0xff000000
+								| clamp(base[b] + modifier) << 16
+								| clamp(base[b + 1] + modifier) << 8
+								| clamp(base[b + 2] + modifier);
+					}
+				}
+			}
+		}
+		return pixels;
+	}
+
+	// Writes r1, g1, b1, r2, g2, b2 expanded to 8 bits into base
+	private static void readBaseColours(long high, int[] base) {
+		boolean differential = (high & 2) != 0;
+		for (int channel = 0; channel < 3; channel++) {
+			int bits = (int) (high >> (24 - channel * 8)) & 0xff;
+			if (differential) {
+				// 5 bit colour then a 3 bit signed offset for the second
+				int first = bits >> 3;
+				int delta = ((bits & 7) << 29) >> 29;
+				int second = first + delta;
+				base[channel] = (first << 3) | (first >> 2);
+				base[channel + 3] = (second << 3) | (second >> 2);
+			} else {
+				// Two 4 bit colours
+				int first = bits >> 4;
+				int second = bits & 0xf;
+				base[channel] = (first << 4) | first;
+				base[channel + 3] = (second << 4) | second;
+			}
+		}
+	}
+
+	private static long readInt(byte[] data, int offset) {
+		return ((long) (data[offset] & 0xff) << 24)
+				| ((data[offset + 1] & 0xff) << 16)
+				| ((data[offset + 2] & 0xff) << 8) | (data[offset + 3] & 0xff);
+	}
+
+	private static int clamp(int value) {
+		return value < 0 ? 0 : value > 255 ? 255 : value;
+	}
+}
@@ -0,0 +1,274 @@
+/* Sprite Batcher V1.31
+   Copyright (c) 2013 Tim Wicksteed <tim@twicecircled.com>
+   http:/www.twicecircled.com
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+
+package com.twicecircled.spritebatcher;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import javax.microedition.khronos.opengles.GL10;
+
+import com.android.vending.expansion.zipfile.APKExpansionSupport;
+import com.android.vending.expansion.zipfile.ZipResourceFile;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.opengl.ETC1;
+import android.util.Log;
+
+public class Etc1Texture extends Texture {
+	// Texture from an ETC1 compressed PKM file, uploaded as it is with
+	// glCompressedTexImage2D so it needs no decoding and a sixth of the
+	// memory of ARGB_8888. ETC1 has no alpha, so if there is a file next to
+	// it ending _alpha.pkm its red channel is used as alpha, uploaded as a
+	// GL_ALPHA texture drawn on the second texture unit. Devices without
+	// ETC1 support get the file decoded on the CPU instead.
+
+	private static final String ETC1_EXTENSION = "GL_OES_compressed_ETC1_RGB8_texture";
+	// Paths starting with this are read from assets rather than the
+	// expansion file
+	protected static final String ASSETS_PREFIX = "assets/";
+
+	private String filepath;
+	private int apkExpansionVersionMain;
+	private int apkExpansionVersionPatch;
+
+	private int alphaTextureId;
+
+	public Etc1Texture(String filepath, int apkExpansionVersionMain,
+			int apkExpansionVersionPatch) {
+		this.filepath = filepath;
+		this.apkExpansionVersionMain = apkExpansionVersionMain;
+		this.apkExpansionVersionPatch = apkExpansionVersionPatch;
+	}
+
+	// Must be read and uploaded together on the GL thread
+	@Override
+	protected boolean canDecodeInBackground() {
+		return false;
+	}
+
+	@Override
+	protected int getAlphaTextureId() {
+		return alphaTextureId;
+	}
+
+	@Override
+	protected void setTextureId(int id) {
+		// Ids are only set for a new context, where the alpha texture went
+		// with the old one, or after deleteTexture() has deleted it. GL
+		// often hands out the same names again, so never compare ids.
+		alphaTextureId = 0;
+		super.setTextureId(id);
+	}
+
+	@Override
+	protected void deleteTexture(GL10 gl) {
+		if (alphaTextureId != 0) {
+			gl.glDeleteTextures(1, new int[] { alphaTextureId }, 0);
+			alphaTextureId = 0;
+		}
+		super.deleteTexture(gl);
+	}
+
+	@Override
+	protected boolean uploadDirect(GL10 gl, Context context) {
+		String extensions = gl.glGetString(GL10.GL_EXTENSIONS);
+		if (extensions == null || !extensions.contains(ETC1_EXTENSION)) {
+			return false;
+		}
+		ZipResourceFile expansionFile = openExpansionFile(context);
+		byte[] data = read(context, expansionFile, filepath);
+		if (data == null) {
+			return false;
+		}
+		PkmHeader header;
+		try {
+			header = PkmHeader.parse(data);
+		} catch (IllegalArgumentException e) {
+			Log.e(SpriteBatcher.TAG, "Error reading " + filepath, e);
+			return false;
+		}
+		ByteBuffer buffer = ByteBuffer.allocateDirect(header.getDataSize());
+		buffer.order(ByteOrder.nativeOrder());
+		buffer.put(data, PkmHeader.SIZE, header.getDataSize());
+		buffer.position(0);
+		// Texture is already bound by SpriteBatcher
+		gl.glCompressedTexImage2D(GL10.GL_TEXTURE_2D, 0, ETC1.ETC1_RGB8_OES,
+				header.encodedWidth, header.encodedHeight, 0,
+				header.getDataSize(), buffer);
+		setDimensions(header.encodedWidth, header.encodedHeight);
+		residentBytes = header.getDataSize();
+
+		byte[] alpha = readAlpha(context, expansionFile, header);
+		if (alpha != null) {
+			uploadAlpha(gl, alpha, header);
+			residentBytes += alpha.length;
+		}
+		return true;
+	}
+
+	@Override
+	protected Bitmap getBitmap(Context context) {
+		// No ETC1 support, decode on the CPU
+		ZipResourceFile expansionFile = openExpansionFile(context);
+		byte[] data = read(context, expansionFile, filepath);
+		if (data == null) {
+			return null;
+		}
+		PkmHeader header;
+		try {
+			header = PkmHeader.parse(data);
+		} catch (IllegalArgumentException e) {
+			Log.e(SpriteBatcher.TAG, "Error reading " + filepath, e);
+			return null;
+		}
+		int[] pixels = Etc1Decoder.decode(data, PkmHeader.SIZE, header);
+		byte[] alpha = readAlpha(context, expansionFile, header);
+		if (alpha != null) {
+			for (int i = 0; i < pixels.length; i++) {
+				pixels[i] = (pixels[i] & 0x00ffffff) | (alpha[i] & 0xff) << 24;
+			}
+		}
+		Bitmap bitmap = Bitmap.createBitmap(header.encodedWidth,
+				header.encodedHeight, Bitmap.Config.ARGB_8888);
+		bitmap.setPixels(pixels, 0, header.encodedWidth, 0, 0,
+				header.encodedWidth, header.encodedHeight);
+		return bitmap;
+	}
+
+	// Alpha for every pixel from the _alpha.pkm file, or null if there is
+	// none or it does not match
+	private byte[] readAlpha(Context context, ZipResourceFile expansionFile,
+			PkmHeader header) {
+		String alphaPath = getAlphaPath(filepath);
+		byte[] data = read(context, expansionFile, alphaPath);
+		if (data == null) {
+			return null;
+		}
+		PkmHeader alphaHeader;
+		try {
+			alphaHeader = PkmHeader.parse(data);
+		} catch (IllegalArgumentException e) {
+			Log.e(SpriteBatcher.TAG, "Error reading " + alphaPath, e);
+			return null;
+		}
+		if (alphaHeader.encodedWidth != header.encodedWidth
+				|| alphaHeader.encodedHeight != header.encodedHeight) {
+			Log.e(SpriteBatcher.TAG, "Error: " + alphaPath
+					+ " is not the same size as " + filepath);
+			return null;
+		}
+		int[] pixels = Etc1Decoder.decode(data, PkmHeader.SIZE, alphaHeader);
+		byte[] alpha = new byte[pixels.length];
+		for (int i = 0; i < pixels.length; i++) {
+			alpha[i] = (byte) (pixels[i] >> 16);
+		}
+		return alpha;
+	}
+
+	private void uploadAlpha(GL10 gl, byte[] alpha, PkmHeader header) {
+		if (alphaTextureId == 0) {
+			int[] id = new int[1];
+			gl.glGenTextures(1, id, 0);
+			alphaTextureId = id[0];
+		}
+		ByteBuffer buffer = ByteBuffer.allocateDirect(alpha.length);
+		buffer.put(alpha);
+		buffer.position(0);
+		gl.glBindTexture(GL10.GL_TEXTURE_2D, alphaTextureId);
+		gl.glTexParameterf(GL10.GL_TEXTURE_2D, GL10.GL_TEXTURE_MAG_FILTER,
+				GL10.GL_LINEAR);
+		gl.glTexParameterf(GL10.GL_TEXTURE_2D, GL10.GL_TEXTURE_MIN_FILTER,
+				GL10.GL_LINEAR);
+		gl.glTexParameterf(GL10.GL_TEXTURE_2D, GL10.GL_TEXTURE_WRAP_S,
+				GL10.GL_REPEAT);
+		gl.glTexParameterf(GL10.GL_TEXTURE_2D, GL10.GL_TEXTURE_WRAP_T,
+				GL10.GL_REPEAT);
+		// Rows of single bytes are not 4 byte aligned
+		gl.glPixelStorei(GL10.GL_UNPACK_ALIGNMENT, 1);
+		gl.glTexImage2D(GL10.GL_TEXTURE_2D, 0, GL10.GL_ALPHA,
+				header.encodedWidth, header.encodedHeight, 0, GL10.GL_ALPHA,
+				GL10.GL_UNSIGNED_BYTE, buffer);
+		gl.glPixelStorei(GL10.GL_UNPACK_ALIGNMENT, 4);
+		gl.glBindTexture(GL10.GL_TEXTURE_2D, textureId);
+	}
+
+	// textures/bg.pkm -> textures/bg_alpha.pkm
+	protected static String getAlphaPath(String filepath) {
+		int dot = filepath.lastIndexOf('.');
+		if (dot == -1) {
+			return filepath + "_alpha";
+		}
+		return filepath.substring(0, dot) + "_alpha"
+				+ filepath.substring(dot);
+	}
+
+	// Expansion file the .pkm files are in, opened once per load so its
+	// central directory is only read once for both files. Null for assets
+	// or if it cannot be opened.
+	private ZipResourceFile openExpansionFile(Context context) {
+		if (filepath.startsWith(ASSETS_PREFIX)) {
+			return null;
+		}
+		try {
+			return APKExpansionSupport.getAPKExpansionZipFile(context,
+					apkExpansionVersionMain, apkExpansionVersionPatch);
+		} catch (IOException e) {
+			Log.e(SpriteBatcher.TAG, "Error finding expansion apk file", e);
+			return null;
+		}
+	}
+
+	// Whole file from assets or the expansion file, or null if it is not
+	// there
+	private byte[] read(Context context, ZipResourceFile expansionFile,
+			String path) {
+		InputStream stream = null;
+		try {
+			if (path.startsWith(ASSETS_PREFIX)) {
+				stream = context.getAssets().open(
+						path.substring(ASSETS_PREFIX.length()));
+			} else if (expansionFile != null) {
+				stream = expansionFile.getInputStream(path);
+			}
+			if (stream == null) {
+				return null;
+			}
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			byte[] chunk = new byte[16384];
+			int read;
+			while ((read = stream.read(chunk)) != -1) {
+				bytes.write(chunk, 0, read);
+			}
+			return bytes.toByteArray();
+		} catch (IOException e) {
+			// Expected for a missing _alpha.pkm
+			return null;
+		} finally {
+			if (stream != null) {
+				try {
+					stream.close();
+				} catch (IOException e) {
+				}
+			}
+		}
+	}
+}
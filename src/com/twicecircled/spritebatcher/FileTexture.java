@@ -34,6 +34,8 @@ public class FileTexture extends Texture {
 	private String filepath;
 	private int apkExpansionVersionMain;
 	private int apkExpansionVersionPatch;
+	// Only set while getBitmap() is decoding
+	private ZipResourceFile expansionFile;
 
 	public FileTexture(String filepath, int apkExpansionVersionMain,
 			int apkExpansionVersionPatch) {
@@ -43,26 +45,80 @@ public class FileTexture extends Texture {
 	}
 
 	@Override
-	protected Bitmap getBitmap(Context context) {
+	protected boolean isAtlasCandidate() {
+		return true;
+	}
+
+	@Override
+	protected boolean canDownsample() {
+		return true;
+	}
+
+	@Override
+	protected String getCacheKey() {
+		return "file:" + filepath + ":" + apkExpansionVersionMain + ":"
+				+ apkExpansionVersionPatch + ":" + sampleSize;
+	}
+
+	@Override
+	protected InputStream openStream(Context context) {
+		return openStream(openExpansionFile(context));
+	}
+
+	private ZipResourceFile openExpansionFile(Context context) {
 		// Get a ZipResourceFile representing a merger of both the main and
 		// patch files
-		ZipResourceFile expansionFile;
 		try {
-			expansionFile = APKExpansionSupport.getAPKExpansionZipFile(context,
+			return APKExpansionSupport.getAPKExpansionZipFile(context,
 					apkExpansionVersionMain, apkExpansionVersionPatch);
 		} catch (IOException e) {
 			Log.e(SpriteBatcher.TAG, "Error finding expansion apk file", e);
 			return null;
 		}
+	}
 
+	private InputStream openStream(ZipResourceFile expansionFile) {
+		if (expansionFile == null) {
+			return null;
+		}
 		// Get an input stream for a known file inside the expansion file ZIPs
-		InputStream fileStream;
 		try {
-			fileStream = expansionFile.getInputStream(filepath);
+			return expansionFile.getInputStream(filepath);
 		} catch (IOException e) {
 			Log.e(SpriteBatcher.TAG, "Error finding file at: " + filepath, e);
 			return null;
 		}
-		return BitmapFactory.decodeStream(fileStream);
+	}
+
+	@Override
+	protected Bitmap decode(Context context, BitmapFactory.Options options) {
+		// Opened by getBitmap() so both decodePooled() passes share it
+		InputStream fileStream = openStream(expansionFile);
+		if (fileStream == null) {
+			return null;
+		}
+		try {
+			return BitmapFactory.decodeStream(fileStream, null, options);
+		} finally {
+			try {
+				fileStream.close();
+			} catch (IOException e) {
+				// Nothing to do
+			}
+		}
+	}
+
+	@Override
+	protected Bitmap getBitmap(Context context) {
+		// Parsing the zip's directory is slow, do it once per decode
+		expansionFile = openExpansionFile(context);
+		if (expansionFile == null) {
+			return null;
+		}
+		try {
+			return decodePooled(context);
+		} finally {
+			expansionFile = null;
+		}
 	}
 }
@@ -17,7 +17,12 @@
 
 package com.twicecircled.spritebatcher;
 
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
 
 import android.content.Context;
 import android.graphics.Bitmap;
@@ -25,6 +30,7 @@ import android.graphics.Canvas;
 import android.graphics.Paint;
 import android.graphics.Rect;
 import android.graphics.Typeface;
+import android.util.Log;
 import android.util.SparseArray;
 import android.util.SparseIntArray;
 
@@ -41,7 +47,11 @@ public class FontTexture extends Texture {
 	private int fontDescent;
 	private SparseIntArray charWidths;
 	private SparseArray<Rect> characterRects;
-	private int cellWidth;
+	// Where each glyph's rect goes relative to the pen position on the
+	// baseline
+	private SparseIntArray glyphLefts;
+	private SparseIntArray glyphTops;
+	// Line height including padding, text is centred on it
 	private int cellHeight;
 
 	// Font settings (defaults)
@@ -53,6 +63,10 @@ public class FontTexture extends Texture {
 	private int padX = 2;
 	private int padY = 4;
 
+	// Anti-aliased edges can fall just outside a glyph's bounds
+	private static final int GLYPH_MARGIN = 1;
+	private static final int MAX_TEXTURE_SIZE = 4096;
+
 	// KNOWN CHAR SETS:
 	public static final int COMMON_JAPANESE_START = 12352;
 	public static final int COMMON_JAPANESE_END = 12543;
@@ -62,6 +76,8 @@ public class FontTexture extends Texture {
 		charStart.add(32);
 		charEnd.add(126);
 		this.tf = tf;
+		// Glyphs are rendered as alpha only, tinted by the draw colour
+		format = TextureFormat.ALPHA_8;
 	}
 
 	protected void setParams(FontParams params) {
@@ -84,39 +100,101 @@ public class FontTexture extends Texture {
 		}
 
 		// Scale text
-		int scaledCellWidth = (int) (scale * cellWidth);
 		int scaledCellHeight = (int) (scale * cellHeight);
 
-		// Adjust to centre text about x,y
-		x -= padX + textWidth / 2;
-		y -= scaledCellHeight / 2;
+		// Adjust to centre text about x,y, then find the first character's
+		// pen position on the baseline
+		x -= textWidth / 2;
+		y += (int) (scale * fontHeight) - scaledCellHeight / 2;
 
 		// Now cycle through and draw text
 		Rect src;
-		Rect dst = new Rect();
 		int charNumber;
 		for (int i = 0; i < text.length(); i++) {
 			// Source rect
 			charNumber = (int) text.charAt(i);
+			if (characterRects.get(charNumber) == null) {
+				// Defaults to unknown char
+				charNumber = charUnknown;
+			}
 			src = characterRects.get(charNumber);
 			charWidth = charWidths.get(charNumber);
 			if (src == null) {
-				// Defaults to unknown char
-				src = characterRects.get(text.charAt(charUnknown));
-				charWidth = charWidths.get(text.charAt(charUnknown));
+				continue;
 			}
 
-			// Destination rect
-			dst.set(x, y, x + scaledCellWidth, y + scaledCellHeight);
-
-			// Add sprite
-			getARGBSpriteData(argb).addSprite(src, dst);
+			// Add sprite, glyph is placed relative to the pen and baseline.
+			// Blank glyphs like space have nothing to draw.
+			if (!src.isEmpty()) {
+				int left = x + Math.round(scale * glyphLefts.get(charNumber));
+				int top = y + Math.round(scale * glyphTops.get(charNumber));
+				getTarget().addSprite(src.left, src.top, src.right,
+						src.bottom, left, top,
+						Math.round(scale * src.width()),
+						Math.round(scale * src.height()), argb);
+			}
 
-			// Move forward CHAR WIDTH (not cell width)
+			// Move forward CHAR WIDTH
 			x += charWidth;
 		}
 	}
 
+	// The typeface comes from resourceId, so that and the params decide the
+	// pixels
+	@Override
+	protected String getCacheKey() {
+		return "font:" + resourceId + ":" + size + ":" + charStart + ":"
+				+ charEnd + ":" + charUnknown + ":" + padX + ":" + padY;
+	}
+
+	@Override
+	protected void writeCacheExtras(DataOutputStream out) throws IOException {
+		out.writeInt(fontHeight);
+		out.writeInt(fontAscent);
+		out.writeInt(fontDescent);
+		out.writeInt(cellHeight);
+		out.writeInt(charWidths.size());
+		for (int i = 0; i < charWidths.size(); i++) {
+			out.writeInt(charWidths.keyAt(i));
+			out.writeInt(charWidths.valueAt(i));
+		}
+		out.writeInt(characterRects.size());
+		for (int i = 0; i < characterRects.size(); i++) {
+			Rect rect = characterRects.valueAt(i);
+			out.writeInt(characterRects.keyAt(i));
+			out.writeInt(rect.left);
+			out.writeInt(rect.top);
+			out.writeInt(rect.right);
+			out.writeInt(rect.bottom);
+			out.writeInt(glyphLefts.valueAt(i));
+			out.writeInt(glyphTops.valueAt(i));
+		}
+	}
+
+	@Override
+	protected void readCacheExtras(DataInputStream in) throws IOException {
+		fontHeight = in.readInt();
+		fontAscent = in.readInt();
+		fontDescent = in.readInt();
+		cellHeight = in.readInt();
+		charWidths = new SparseIntArray();
+		int count = in.readInt();
+		for (int i = 0; i < count; i++) {
+			charWidths.put(in.readInt(), in.readInt());
+		}
+		characterRects = new SparseArray<Rect>();
+		glyphLefts = new SparseIntArray();
+		glyphTops = new SparseIntArray();
+		count = in.readInt();
+		for (int i = 0; i < count; i++) {
+			int c = in.readInt();
+			characterRects.put(c, new Rect(in.readInt(), in.readInt(),
+					in.readInt(), in.readInt()));
+			glyphLefts.put(c, in.readInt());
+			glyphTops.put(c, in.readInt());
+		}
+	}
+
 	@Override
 	protected Bitmap getBitmap(Context context) {
 		// We use the font to create a sprite atlas containing every letter,
@@ -139,87 +217,129 @@ public class FontTexture extends Texture {
 		// Store for char widths
 		charWidths = new SparseIntArray();
 
-		// Cycle through chars and store width of each character
+		// Cycle through chars and store the width and tight bounds of each
+		// character, the bounds are relative to the pen on the baseline
+		int glyphCount = 0;
+		for (int i = 0; i < charStart.size(); i++) {
+			glyphCount += Math.max(0, charEnd.get(i) - charStart.get(i) + 1);
+		}
+		char[] chars = new char[glyphCount];
+		Rect[] bounds = new Rect[glyphCount];
 		char[] s = new char[2];
 		float[] w = new float[2];
-		int charWidthMax = 0;
-		int charWidth;
+		int glyph = 0;
 		for (int i = 0; i < charStart.size(); i++) {
 			for (char c = (char) (int) charStart.get(i); c <= (char) (int) charEnd
 					.get(i); c++) {
 				s[0] = c;
 				paint.getTextWidths(s, 0, 1, w);
-				charWidth = (int) Math.ceil(w[0]);
 				// Store it
-				charWidths.put(c, charWidth);
-				if (charWidth > charWidthMax) {
-					// Store max width
-					charWidthMax = charWidth;
+				charWidths.put(c, (int) Math.ceil(w[0]));
+				chars[glyph] = c;
+				bounds[glyph] = new Rect();
+				paint.getTextBounds(s, 0, 1, bounds[glyph]);
+				if (!bounds[glyph].isEmpty()) {
+					// Room for anti-aliasing just outside the bounds
+					bounds[glyph].inset(-GLYPH_MARGIN, -GLYPH_MARGIN);
 				}
+				glyph++;
 			}
 		}
 
-		// set character height to font height
-		int charHeight = fontHeight;
-
-		// Find the maximum size, validate, and setup cell sizes
-		cellWidth = (int) charWidthMax + (2 * padX);
-		cellHeight = (int) charHeight + padY;
-		// Save whichever is bigger
-		int maxSize = cellWidth > cellHeight ? cellWidth : cellHeight;
-
-		// Ensure power-of-2 texture sizes. Base it on maxSize
-		// TODO: Make automatic? Are we OK beyond 1024?
-		// Here is how calculation goes:
-		// Number of chars = 95
-		// Square root (round up) = 10 x 10 grid
-		// Max size = 256 / 10 = 25.6 (24?)
-		int textureSize = 0;
-		if (maxSize <= 24) // IF Max Size is 24 or Less
-			textureSize = 256;
-		else if (maxSize <= 40) // ELSE IF Max Size is 40 or Less
-			textureSize = 512;
-		else if (maxSize <= 80) // ELSE IF Max Size is 80 or Less
-			textureSize = 1024;
-		else if (maxSize <= 160) // ELSE IF Max Size is 160 or Less
-			textureSize = 2048;
-		else
-			// ELSE IF Max Size is Larger Than 80 (and Less than FONT_SIZE_MAX)
-			textureSize = 4096;
+		// set cell height to font height, padded
+		cellHeight = fontHeight + padY;
+
+		// Pack the glyphs, tallest first, into the smallest power of 2
+		// texture they fit in. padX and padY are left between glyphs.
+		Integer[] order = new Integer[glyphCount];
+		int area = 0;
+		int maxWidth = 1;
+		int maxHeight = 1;
+		for (int i = 0; i < glyphCount; i++) {
+			order[i] = i;
+			if (!bounds[i].isEmpty()) {
+				int paddedWidth = bounds[i].width() + padX;
+				int paddedHeight = bounds[i].height() + padY;
+				area += paddedWidth * paddedHeight;
+				maxWidth = Math.max(maxWidth, paddedWidth);
+				maxHeight = Math.max(maxHeight, paddedHeight);
+			}
+		}
+		final Rect[] sortBounds = bounds;
+		Arrays.sort(order, new Comparator<Integer>() {
+			@Override
+			public int compare(Integer a, Integer b) {
+				return sortBounds[b].height() - sortBounds[a].height();
+			}
+		});
+		int textureWidth = SpriteBatcher.nextPowerOfTwo(Math.max(maxWidth,
+				(int) Math.ceil(Math.sqrt(area))));
+		int textureHeight = SpriteBatcher.nextPowerOfTwo(Math.max(maxHeight,
+				area / textureWidth));
+		int[][] positions = new int[glyphCount][2];
+		while (!pack(bounds, order, positions, textureWidth, textureHeight)) {
+			// Grow the shorter side
+			if (textureHeight < textureWidth) {
+				textureHeight <<= 1;
+			} else {
+				textureWidth <<= 1;
+			}
+			if (textureWidth > MAX_TEXTURE_SIZE) {
+				Log.e(SpriteBatcher.TAG, "Error: font of size " + size
+						+ " does not fit in a " + MAX_TEXTURE_SIZE
+						+ " texture, reduce the size or character ranges");
+				return null;
+			}
+		}
 
 		// Create an empty bitmap (alpha only)
-		Bitmap bitmap = Bitmap.createBitmap(textureSize, textureSize,
+		Bitmap bitmap = createBitmap(textureWidth, textureHeight,
 				Bitmap.Config.ALPHA_8);
 		// Create Canvas for rendering to Bitmap
 		Canvas canvas = new Canvas(bitmap);
 		bitmap.eraseColor(0x00000000); // Set Transparent Background (ARGB)
 
-		// Calculate number of columns
-		// int colCnt = textureSize / cellWidth;
-
 		// Render each of the characters to the canvas (i.e. build the font map)
-		// Also store a source rectangle for each char
+		// Also store a tight source rectangle for each char and where it sits
+		// relative to the pen
 		characterRects = new SparseArray<Rect>();
-		int x = 0;
-		int y = 0;
-		for (int i = 0; i < charStart.size(); i++) {
-			for (char c = (char) (int) charStart.get(i); c <= (char) (int) charEnd
-					.get(i); c++) {
+		glyphLefts = new SparseIntArray();
+		glyphTops = new SparseIntArray();
+		for (int i = 0; i < glyphCount; i++) {
+			Rect glyphBounds = bounds[i];
+			int x = positions[i][0];
+			int y = positions[i][1];
+			if (!glyphBounds.isEmpty()) {
 				// Draw char
-				s[0] = c;
-				canvas.drawText(s, 0, 1, x + padX, y + cellHeight - padY, paint);
-				// Store source rectangle
-				characterRects.put((int) c, new Rect(x, y, x + cellWidth, y
-						+ cellHeight));
-				// Increment and wrap at end of line
-				x += cellWidth;
-				if ((x + cellWidth) > textureSize) {
-					x = 0;
-					y += cellHeight;
-				}
+				s[0] = chars[i];
+				canvas.drawText(s, 0, 1, x - glyphBounds.left, y
+						- glyphBounds.top, paint);
 			}
+			// Store source rectangle
+			characterRects.put((int) chars[i], new Rect(x, y, x
+					+ glyphBounds.width(), y + glyphBounds.height()));
+			glyphLefts.put(chars[i], glyphBounds.left);
+			glyphTops.put(chars[i], glyphBounds.top);
 		}
 
 		return bitmap;
 	}
+
+	// Places every non empty glyph, returns false if they do not all fit
+	private boolean pack(Rect[] bounds, Integer[] order, int[][] positions,
+			int textureWidth, int textureHeight) {
+		SkylinePacker packer = new SkylinePacker(textureWidth, textureHeight,
+				0);
+		for (int o = 0; o < order.length; o++) {
+			int i = order[o];
+			if (bounds[i].isEmpty()) {
+				positions[i][0] = 0;
+				positions[i][1] = 0;
+			} else if (!packer.insert(bounds[i].width() + padX,
+					bounds[i].height() + padY, positions[i])) {
+				return false;
+			}
+		}
+		return true;
+	}
 }
@@ -0,0 +1,36 @@
+/* Sprite Batcher V1.31
+   Copyright (c) 2013 Tim Wicksteed <tim@twicecircled.com>
+   http:/www.twicecircled.com
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+
+package com.twicecircled.spritebatcher;
+
+import javax.microedition.khronos.opengles.GL10;
+import javax.microedition.khronos.opengles.GL11;
+
+class GLVersion {
+	// Checks for what the GL context supports, shared by everything that
+	// has a GL11 path
+
+	// Android hands out a GL11 instance for 1.0 contexts too, so check the
+	// version string as well
+	protected static boolean isGL11(GL10 gl) {
+		if (!(gl instanceof GL11)) {
+			return false;
+		}
+		String version = gl.glGetString(GL10.GL_VERSION);
+		return version != null && version.contains("1.1");
+	}
+}
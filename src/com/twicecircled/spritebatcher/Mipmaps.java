@@ -0,0 +1,81 @@
+/* Sprite Batcher V1.31
+   Copyright (c) 2013 Tim Wicksteed <tim@twicecircled.com>
+   http:/www.twicecircled.com
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+
+package com.twicecircled.spritebatcher;
+
+import javax.microedition.khronos.opengles.GL10;
+import javax.microedition.khronos.opengles.GL11;
+
+import android.graphics.Bitmap;
+import android.opengl.GLUtils;
+
+class Mipmaps {
+	// Builds the chain of half size levels for textures drawn smaller than
+	// they are, see SpriteBatcher.setMipmaps(). Sampled with
+	// GL_LINEAR_MIPMAP_NEAREST they stay sharp without shimmering and read
+	// far fewer texels. A full chain adds a third to the texture's memory.
+
+	// GL_GENERATE_MIPMAP is core in OpenGL ES 1.1
+	protected static boolean isGenerateSupported(GL10 gl) {
+		return GLVersion.isGL11(gl);
+	}
+
+	// OpenGL ES 1 only mipmaps power of 2 textures
+	protected static boolean canMipmap(Bitmap bitmap) {
+		return Integer.bitCount(bitmap.getWidth()) == 1
+				&& Integer.bitCount(bitmap.getHeight()) == 1;
+	}
+
+	// Called with the texture bound, before level 0 is uploaded
+	protected static void setUp(GL10 gl, boolean generate) {
+		gl.glTexParameterf(GL10.GL_TEXTURE_2D, GL10.GL_TEXTURE_MIN_FILTER,
+				GL10.GL_LINEAR_MIPMAP_NEAREST);
+		if (generate) {
+			// GL_TRUE, OpenGL fills in the levels whenever level 0 changes
+			gl.glTexParameterf(GL10.GL_TEXTURE_2D, GL11.GL_GENERATE_MIPMAP, 1);
+		}
+	}
+
+	// Uploads levels 1 down to 1x1 on the CPU, each a 2x2 box filter of the
+	// one before. The level 0 bitmap is left alone.
+	protected static void uploadLevels(GL10 gl, Bitmap bitmap,
+			TextureFormat format, boolean dither) {
+		Bitmap previous = bitmap;
+		int level = 0;
+		while (previous.getWidth() > 1 || previous.getHeight() > 1) {
+			// Filtered halving averages each 2x2 block
+			Bitmap next = format.convert(Bitmap.createScaledBitmap(previous,
+					Math.max(1, previous.getWidth() / 2),
+					Math.max(1, previous.getHeight() / 2), true), dither);
+			if (previous != bitmap) {
+				previous.recycle();
+			}
+			level++;
+			GLUtils.texImage2D(GL10.GL_TEXTURE_2D, level, format.glFormat,
+					next, format.glType, 0);
+			previous = next;
+		}
+		if (previous != bitmap) {
+			previous.recycle();
+		}
+	}
+
+	// Memory of a full chain given the size of level 0
+	protected static int getChainBytes(int levelBytes) {
+		return levelBytes + levelBytes / 3;
+	}
+}
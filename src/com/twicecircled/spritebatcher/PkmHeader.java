@@ -0,0 +1,76 @@
+/* Sprite Batcher V1.31
+   Copyright (c) 2013 Tim Wicksteed <tim@twicecircled.com>
+   http:/www.twicecircled.com
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+
+package com.twicecircled.spritebatcher;
+
+class PkmHeader {
+	// The 16 byte header at the start of a PKM file, as written by
+	// etc1tool. Plain Java so it can be checked without a device.
+	// 0 "PKM " magic
+	// 4 "10" version
+	// 6 format, 0 for ETC1 RGB without mipmaps
+	// 8 width and height rounded up to a multiple of 4, then the original
+	// width and height, all 16 bit big endian
+
+	protected static final int SIZE = 16;
+	protected static final int ETC1_RGB_NO_MIPMAPS = 0;
+
+	protected final int encodedWidth;
+	protected final int encodedHeight;
+	protected final int width;
+	protected final int height;
+
+	private PkmHeader(int encodedWidth, int encodedHeight, int width,
+			int height) {
+		this.encodedWidth = encodedWidth;
+		this.encodedHeight = encodedHeight;
+		this.width = width;
+		this.height = height;
+	}
+
+	// Throws IllegalArgumentException if data does not start with a valid
+	// ETC1 PKM header
+	protected static PkmHeader parse(byte[] data) {
+		if (data.length < SIZE || data[0] != 'P' || data[1] != 'K'
+				|| data[2] != 'M' || data[3] != ' ' || data[4] != '1'
+				|| data[5] != '0') {
+			throw new IllegalArgumentException("Not a version 10 PKM file");
+		}
+		if (readShort(data, 6) != ETC1_RGB_NO_MIPMAPS) {
+			throw new IllegalArgumentException("PKM file is not ETC1 RGB");
+		}
+		PkmHeader header = new PkmHeader(readShort(data, 8), readShort(data,
+				10), readShort(data, 12), readShort(data, 14));
+		if (header.width > header.encodedWidth
+				|| header.height > header.encodedHeight
+				|| header.encodedWidth % 4 != 0
+				|| header.encodedHeight % 4 != 0
+				|| data.length < SIZE + header.getDataSize()) {
+			throw new IllegalArgumentException("PKM file is truncated or corrupt");
+		}
+		return header;
+	}
+
+	// Bytes of ETC1 data after the header, 8 per 4x4 block
+	protected int getDataSize() {
+		return (encodedWidth / 4) * (encodedHeight / 4) * 8;
+	}
+
+	private static int readShort(byte[] data, int offset) {
+		return ((data[offset] & 0xff) << 8) | (data[offset + 1] & 0xff);
+	}
+}
@@ -0,0 +1,64 @@
+/* Sprite Batcher V1.31
+   Copyright (c) 2013 Tim Wicksteed <tim@twicecircled.com>
+   http:/www.twicecircled.com
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+
+package com.twicecircled.spritebatcher;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.ShortBuffer;
+
+class QuadIndices {
+	// Every sprite is a quad made of two triangles over four vertices, so the
+	// index pattern is always the same: 0,1,2 0,2,3 then 4,5,6 4,6,7 and so
+	// on. It is built once here and shared by every texture, leaving only the
+	// vertex data to be sent each frame.
+
+	// Largest number of quads whose vertices can all be addressed with
+	// GL_UNSIGNED_SHORT indices (4 * 16384 = 65536 vertices)
+	protected static final int MAX_QUADS = 16384;
+	protected static final int INDICES_PER_QUAD = 6;
+
+	private static ShortBuffer indexBuffer;
+
+	protected static short[] build(int quads) {
+		short[] indices = new short[quads * INDICES_PER_QUAD];
+		int first = 0;
+		for (int i = 0; i < indices.length; i += INDICES_PER_QUAD) {
+			// Values above 32767 wrap negative, GL reads them unsigned
+			indices[i] = (short) first;
+			indices[i + 1] = (short) (first + 1);
+			indices[i + 2] = (short) (first + 2);
+			indices[i + 3] = (short) first;
+			indices[i + 4] = (short) (first + 2);
+			indices[i + 5] = (short) (first + 3);
+			first += 4;
+		}
+		return indices;
+	}
+
+	protected static synchronized ShortBuffer getBuffer() {
+		if (indexBuffer == null) {
+			short[] indices = build(MAX_QUADS);
+			ByteBuffer ibb = ByteBuffer.allocateDirect(indices.length * 2);
+			ibb.order(ByteOrder.nativeOrder());
+			indexBuffer = ibb.asShortBuffer();
+			indexBuffer.put(indices);
+		}
+		indexBuffer.position(0);
+		return indexBuffer;
+	}
+}
@@ -0,0 +1,60 @@
+/* Sprite Batcher V1.31
+   Copyright (c) 2013 Tim Wicksteed <tim@twicecircled.com>
+   http:/www.twicecircled.com
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+
+package com.twicecircled.spritebatcher;
+
+import javax.microedition.khronos.opengles.GL10;
+
+abstract class QuadRenderer {
+	// Sends batches of quads to OpenGL. SpriteBatcher picks an implementation
+	// in onSurfaceCreated depending on what the device supports.
+
+	// Called from onSurfaceCreated, any GL objects from a previous context
+	// are gone by now
+	protected abstract void onSurfaceCreated(GL10 gl);
+
+	// Whether texture coordinates also go to the second texture unit, for
+	// textures with a separate alpha texture
+	protected boolean secondTexCoords;
+
+	protected void setSecondTexCoords(boolean enabled) {
+		secondTexCoords = enabled;
+	}
+
+	// Called at the start and end of each batchDraw so GL state can be set up
+	// once and put back before control returns to the Drawer
+	protected abstract void begin(GL10 gl);
+
+	protected abstract void end(GL10 gl);
+
+	// Draw quads [firstQuad, firstQuad + quads) from an interleaved vertex
+	// array. quads is never more than QuadIndices.MAX_QUADS.
+	protected abstract void drawQuads(GL10 gl, int[] vertices,
+			int firstQuad, int quads);
+
+	// Draw quads from a SpriteData whose geometry is kept between frames
+	// (see SpriteLayer). By default it is sent like any other batch.
+	protected void drawRetained(GL10 gl, SpriteData spriteData,
+			int firstQuad, int quads) {
+		drawQuads(gl, spriteData.getVertices(), firstQuad, quads);
+	}
+
+	// Free anything drawRetained() kept on the GPU for a SpriteData that
+	// will not be drawn again
+	protected void releaseRetained(GL10 gl, SpriteData spriteData) {
+	}
+}
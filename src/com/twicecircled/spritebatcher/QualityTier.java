@@ -0,0 +1,72 @@
+/* Sprite Batcher V1.31
+   Copyright (c) 2013 Tim Wicksteed <tim@twicecircled.com>
+   http:/www.twicecircled.com
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+
+package com.twicecircled.spritebatcher;
+
+import android.app.ActivityManager;
+import android.content.Context;
+
+/**
+ * Resolution textures are decoded at, see SpriteBatcher.setQualityTier().
+ * Lower tiers use a quarter or a sixteenth of the memory, at the cost of
+ * sharpness. Coordinates passed to the draw methods are always in full
+ * resolution pixels whatever the tier.
+ */
+public enum QualityTier {
+	/**
+	 * Full resolution. The default.
+	 */
+	FULL(1),
+	/**
+	 * Half width and height.
+	 */
+	HALF(2),
+	/**
+	 * Quarter width and height.
+	 */
+	QUARTER(4);
+
+	// Memory classes in MB at or above which each tier is picked by
+	// forDevice()
+	private static final int FULL_MEMORY_CLASS = 48;
+	private static final int HALF_MEMORY_CLASS = 24;
+
+	protected final int sampleSize;
+
+	private QualityTier(int sampleSize) {
+		this.sampleSize = sampleSize;
+	}
+
+	/**
+	 * Returns the tier suited to this device's memory class (the heap limit
+	 * each app gets): full from 48MB, half from 24MB, quarter below that.
+	 * 
+	 * @param context
+	 * @return
+	 */
+	public static QualityTier forDevice(Context context) {
+		ActivityManager activityManager = (ActivityManager) context
+				.getSystemService(Context.ACTIVITY_SERVICE);
+		int memoryClass = activityManager.getMemoryClass();
+		if (memoryClass >= FULL_MEMORY_CLASS) {
+			return FULL;
+		} else if (memoryClass >= HALF_MEMORY_CLASS) {
+			return HALF;
+		}
+		return QUARTER;
+	}
+}
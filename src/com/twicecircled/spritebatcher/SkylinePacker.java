@@ -0,0 +1,147 @@
+/* Sprite Batcher V1.31
+   Copyright (c) 2013 Tim Wicksteed <tim@twicecircled.com>
+   http:/www.twicecircled.com
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+
+package com.twicecircled.spritebatcher;
+
+import java.util.ArrayList;
+
+class SkylinePacker {
+	// Packs rectangles into a fixed size area using the skyline bottom-left
+	// heuristic. The skyline is the top edge of everything placed so far,
+	// stored as horizontal segments. Each rectangle goes where its top would
+	// be lowest, ties broken by the narrowest fit.
+
+	private int width;
+	private int height;
+	private int padding;
+
+	// Each segment is { x, y, width }, ordered left to right
+	private ArrayList<int[]> segments = new ArrayList<int[]>();
+
+	// Furthest extent of anything placed
+	private int usedWidth;
+	private int usedHeight;
+
+	protected SkylinePacker(int width, int height, int padding) {
+		this.width = width;
+		this.height = height;
+		this.padding = padding;
+		segments.add(new int[] { 0, 0, width });
+	}
+
+	// Finds space for a w x h rectangle. On success its top left corner is
+	// written to out[0], out[1] and true is returned.
+	protected boolean insert(int w, int h, int[] out) {
+		int paddedW = w + padding;
+		int paddedH = h + padding;
+		int bestIndex = -1;
+		int bestY = Integer.MAX_VALUE;
+		int bestWidth = Integer.MAX_VALUE;
+		for (int i = 0; i < segments.size(); i++) {
+			int y = fit(i, paddedW, paddedH);
+			if (y >= 0) {
+				int segmentWidth = segments.get(i)[2];
+				if (y + paddedH < bestY
+						|| (y + paddedH == bestY && segmentWidth < bestWidth)) {
+					bestIndex = i;
+					bestY = y + paddedH;
+					bestWidth = segmentWidth;
+				}
+			}
+		}
+		if (bestIndex == -1) {
+			return false;
+		}
+		int x = segments.get(bestIndex)[0];
+		int y = bestY - paddedH;
+		// Trailing padding may hang off the right edge
+		addLevel(bestIndex, x, y + paddedH, Math.min(paddedW, width - x));
+		out[0] = x;
+		out[1] = y;
+		usedWidth = Math.max(usedWidth, x + w);
+		usedHeight = Math.max(usedHeight, y + h);
+		return true;
+	}
+
+	protected int getUsedWidth() {
+		return usedWidth;
+	}
+
+	protected int getUsedHeight() {
+		return usedHeight;
+	}
+
+	// Returns the y a rectangle would sit at if its left edge was at the
+	// start of segment index, or -1 if it does not fit there
+	private int fit(int index, int w, int h) {
+		int x = segments.get(index)[0];
+		if (x + w > width + padding) {
+			return -1;
+		}
+		// The last segment absorbs any padding past the edge
+		int remaining = Math.min(w, width - x);
+		int y = 0;
+		int i = index;
+		while (remaining > 0) {
+			if (i == segments.size()) {
+				return -1;
+			}
+			int[] segment = segments.get(i);
+			y = Math.max(y, segment[1]);
+			if (y + h > height + padding) {
+				return -1;
+			}
+			remaining -= segment[2];
+			i++;
+		}
+		return y;
+	}
+
+	// Raise the skyline to y over [x, x + w)
+	private void addLevel(int index, int x, int y, int w) {
+		segments.add(index, new int[] { x, y, w });
+		// Trim or remove the segments now underneath the new one
+		int i = index + 1;
+		while (i < segments.size()) {
+			int[] segment = segments.get(i);
+			int[] previous = segments.get(i - 1);
+			int previousEnd = previous[0] + previous[2];
+			if (segment[0] < previousEnd) {
+				int shrink = previousEnd - segment[0];
+				segment[0] += shrink;
+				segment[2] -= shrink;
+				if (segment[2] <= 0) {
+					segments.remove(i);
+					continue;
+				}
+			}
+			break;
+		}
+		// Merge neighbours at the same height
+		i = 0;
+		while (i < segments.size() - 1) {
+			int[] segment = segments.get(i);
+			int[] next = segments.get(i + 1);
+			if (segment[1] == next[1]) {
+				segment[2] += next[2];
+				segments.remove(i + 1);
+			} else {
+				i++;
+			}
+		}
+	}
+}
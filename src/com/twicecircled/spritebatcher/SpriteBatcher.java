@@ -17,23 +17,22 @@
 
 package com.twicecircled.spritebatcher;
 
-import java.nio.ByteBuffer;
-import java.nio.ByteOrder;
-import java.nio.FloatBuffer;
-import java.nio.ShortBuffer;
+import java.io.File;
 import java.util.ArrayList;
-import java.util.Iterator;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
 import javax.microedition.khronos.egl.EGLConfig;
 import javax.microedition.khronos.opengles.GL10;
 
 import android.content.Context;
 import android.content.res.Resources;
 import android.graphics.Bitmap;
-import android.graphics.Color;
 import android.graphics.Rect;
 import android.graphics.Typeface;
 import android.opengl.GLSurfaceView.Renderer;
 import android.opengl.GLUtils;
+import android.os.SystemClock;
 import android.util.Log;
 import android.util.SparseArray;
 
@@ -52,6 +51,8 @@ public class SpriteBatcher implements Renderer {
 	private long lastTime;
 
 	private int count;
+	// Number of extra draw calls caused by batches over the 16 bit limit
+	private int splitCount;
 
 	private Context context;
 
@@ -59,6 +60,82 @@ public class SpriteBatcher implements Renderer {
 	SparseArray<Texture> texturesByResourceId;
 	// ArrayList for consistent draw order
 	ArrayList<Texture> drawOrder;
+	// Textures indexed by handle, see getTextureHandle()
+	Texture[] texturesByHandle;
+
+	/**
+	 * Returned by getTextureHandle() for an unknown resource id.
+	 */
+	public static final int INVALID_HANDLE = -1;
+
+	// Diagnostics for draws against unknown resource ids or handles
+	private static final long NOT_FOUND_WARNING_INTERVAL = 5000; // ms
+	private int notFoundCount;
+	private long lastNotFoundWarning = -NOT_FOUND_WARNING_INTERVAL;
+
+	// Direct buffers shared by every batch, reused between frames
+	private StagingBuffers stagingBuffers = new StagingBuffers();
+	// Sends batches to OpenGL, chosen in onSurfaceCreated
+	private QuadRenderer renderer = new ClientArrayRenderer(stagingBuffers);
+	private boolean useVertexBufferObjects;
+
+	// Every layer created, and the ones to replay at the next batchDraw
+	private ArrayList<SpriteLayer> layers = new ArrayList<SpriteLayer>();
+	private ArrayList<SpriteLayer> pendingLayers = new ArrayList<SpriteLayer>();
+	// Layers given up by releaseLayer(), freed at the start of the next frame
+	private ArrayList<SpriteLayer> releasedLayers = new ArrayList<SpriteLayer>();
+	private SpriteLayer recordingLayer;
+
+	// Atlas packing, see setAtlasPacking()
+	private boolean atlasPacking;
+	private int atlasPageSize = DEFAULT_ATLAS_PAGE_SIZE;
+	private ArrayList<AtlasPage> atlasPages;
+	private static final int DEFAULT_ATLAS_PAGE_SIZE = 1024;
+	// Gap between packed textures so linear filtering does not bleed
+	private static final int ATLAS_PADDING = 2;
+
+	// Decodes textures off the GL thread, see setAsyncLoading() and
+	// prefetchTextureGroup()
+	private TextureLoader textureLoader;
+	private boolean asyncLoading;
+	private int uploadBytesPerFrame = DEFAULT_UPLOAD_BYTES_PER_FRAME;
+	private static final int DEFAULT_UPLOAD_BYTES_PER_FRAME = 1048576;
+
+	// Decoded pixels kept on disk, see setTextureCache()
+	private TextureCache textureCache;
+	// Bitmaps reused while loading, see setBitmapPool()
+	private BitmapPool bitmapPool;
+
+	// Named sets of textures, see defineTextureGroup()
+	private HashMap<String, TextureGroup> textureGroups = new HashMap<String, TextureGroup>();
+	private boolean surfaceCreated;
+	// Told how long loading takes, see setTextureLoadListener()
+	private TextureLoadListener loadListener;
+	private long loadStartTime;
+
+	// Deletes unused textures when over budget, see setTextureMemoryBudget()
+	private TextureResidency residency;
+
+	// Images added at runtime, see addImage()
+	private DynamicAtlas dynamicAtlas;
+	private int dynamicPageSize = DEFAULT_DYNAMIC_PAGE_SIZE;
+	private int dynamicMaxPages = DEFAULT_DYNAMIC_MAX_PAGES;
+	private static final int DEFAULT_DYNAMIC_PAGE_SIZE = 1024;
+	private static final int DEFAULT_DYNAMIC_MAX_PAGES = 4;
+
+	// Images streamed in tiles, see setTiledTexture()
+	private ArrayList<TiledTexture> tiledTextures = new ArrayList<TiledTexture>();
+
+	// Visible area for culling off screen sprites
+	private Viewport viewport = new Viewport();
+
+	// Resolution bitmaps are decoded at, see setQualityTier()
+	private QualityTier qualityTier = QualityTier.FULL;
+
+	// Whether OpenGL can build mip chains itself, see setMipmaps()
+	private boolean generateMipmaps;
+
+	private static final String TEXTURE_CACHE_DIRECTORY = "spritebatcher";
 
 	// Resource types
 	private static final String DRAWABLE = "drawable";
@@ -74,7 +151,7 @@ public class SpriteBatcher implements Renderer {
 	 * @param resourceIds
 	 *            valid resource ids are R.drawable.xxx for normal sprites or
 	 *            R.String.xxx where the string resource contains a path to a
-	 *            font.
+	 *            font, or to an ETC1 .pkm file in assets starting "assets/".
 	 * @param drawer
 	 *            object implementing Drawer interface
 	 */
@@ -91,7 +168,9 @@ public class SpriteBatcher implements Renderer {
 	 * @param resourceIds
 	 *            valid resource ids are R.drawable.xxx for normal sprites or
 	 *            R.String.xxx where the string resource contains a path to a
-	 *            font or to a drawable in an expansion file
+	 *            font or to a drawable in an expansion file. Paths ending
+	 *            .pkm are ETC1 files, from assets if they start "assets/".
+	 *            An ETC1 file can have its alpha in a matching _alpha.pkm.
 	 * @param drawer
 	 *            object implementing Drawer interface
 	 */
@@ -107,22 +186,28 @@ public class SpriteBatcher implements Renderer {
 		this.context = context;
 
 		// Create texture objects for each resource id
+		texturesByResourceId = new SparseArray<Texture>();
+		drawOrder = new ArrayList<Texture>();
 		setUpTextureObjects(context, resourceIds);
 
 		this.drawer = drawer;
 	}
 
+	// Adds texture objects for any resource ids not already known, after
+	// those already in drawOrder
 	private void setUpTextureObjects(Context context, int[] resourceIds) {
-		texturesByResourceId = new SparseArray<Texture>();
-		drawOrder = new ArrayList<Texture>();
 		// Loop through resource ids and generate texture objects
 		String filePath;
 		Texture texture;
 		for (int i = 0; i < resourceIds.length; i++) {
+			if (texturesByResourceId.get(resourceIds[i]) != null) {
+				continue;
+			}
 			try {
 				if (context.getResources().getResourceTypeName(resourceIds[i])
 						.equals(DRAWABLE)) {
 					texture = new BasicTexture(resourceIds[i]);
+					texture.resourceId = resourceIds[i];
 					texturesByResourceId.put(resourceIds[i], texture);
 					drawOrder.add(texture);
 				} else if (context.getResources()
@@ -147,6 +232,15 @@ public class SpriteBatcher implements Renderer {
 						}
 						// Store font texture
 						texture = new FontTexture(tf);
+						texture.resourceId = resourceIds[i];
+						texturesByResourceId.put(resourceIds[i], texture);
+						drawOrder.add(texture);
+					} else if (filePath.endsWith(".pkm")) {
+						// ETC1 file in assets or the expansion file
+						texture = new Etc1Texture(filePath,
+								apkExpansionVersionMain,
+								apkExpansionVersionPatch);
+						texture.resourceId = resourceIds[i];
 						texturesByResourceId.put(resourceIds[i], texture);
 						drawOrder.add(texture);
 					} else {
@@ -154,6 +248,7 @@ public class SpriteBatcher implements Renderer {
 						texture = new FileTexture(filePath,
 								apkExpansionVersionMain,
 								apkExpansionVersionPatch);
+						texture.resourceId = resourceIds[i];
 						texturesByResourceId.put(resourceIds[i], texture);
 						drawOrder.add(texture);
 					}
@@ -168,6 +263,13 @@ public class SpriteBatcher implements Renderer {
 						+ "] not found. Not a resource id.", e);
 			}
 		}
+		texturesByHandle = drawOrder.toArray(new Texture[drawOrder.size()]);
+		for (int i = 0; i < drawOrder.size(); i++) {
+			drawOrder.get(i).setViewport(viewport);
+			drawOrder.get(i).cache = textureCache;
+			drawOrder.get(i).pool = bitmapPool;
+			applyQualityTier(drawOrder.get(i));
+		}
 	}
 
 	@Override
@@ -195,10 +297,30 @@ public class SpriteBatcher implements Renderer {
 
 		// START DRAWING
 		count = 0;
+		viewport.newFrame();
+		for (int i = 0; i < releasedLayers.size(); i++) {
+			releasedLayers.get(i).release(gl, renderer);
+		}
+		releasedLayers.clear();
+		if (textureLoader != null) {
+			uploadLoadedTextures(gl);
+		}
+		if (dynamicAtlas != null) {
+			updateDynamicAtlas(gl);
+		}
+		for (int i = 0; i < tiledTextures.size(); i++) {
+			if (tiledTextures.get(i).isReady()) {
+				tiledTextures.get(i).update(gl);
+			}
+		}
 		drawer.onDrawFrame(gl, this);
 
 		// Finally, send off all the draw commands in batches
 		batchDraw(gl);
+		if (residency != null) {
+			residency.evict(gl, drawOrder);
+			residency.newFrame();
+		}
 		// Log.i(TAG, "Batch count = " + count);
 	}
 
@@ -206,11 +328,655 @@ public class SpriteBatcher implements Renderer {
 		this.maxFPS = maxFPS;
 	}
 
+	/**
+	 * Change how the direct buffers used to send sprites to OpenGL are sized.
+	 * The buffers are kept between frames and only reallocated when a single
+	 * batch needs more room than they have. Default is room for 256 sprites,
+	 * doubling when full.
+	 * 
+	 * @param initialSprites
+	 *            number of sprites the buffers can hold when first allocated
+	 * @param growthFactor
+	 *            multiplier applied to the capacity each time it is exceeded.
+	 *            Must be greater than 1.
+	 */
+	public void setBufferCapacity(int initialSprites, float growthFactor) {
+		stagingBuffers.setCapacityPolicy(initialSprites, growthFactor);
+	}
+
+	/**
+	 * Decode textures on a background thread instead of all at once in
+	 * onSurfaceCreated(), which can block the first frame for a long time
+	 * with big textures. Decoded bitmaps are uploaded at the start of each
+	 * frame, up to uploadBytesPerFrame bytes per frame (at least one bitmap
+	 * per frame). Sprites drawn with a texture that is not loaded yet are
+	 * skipped, use isTextureReady() to check. Note this method should be
+	 * called prior to calling setRenderer(SpriteBatcher) on your
+	 * GLSurfaceView. Default is off.
+	 * 
+	 * @param enabled
+	 * @param uploadBytesPerFrame
+	 *            e.g. 1048576 uploads about one 512x512 ARGB_8888 texture per
+	 *            frame
+	 */
+	public void setAsyncLoading(boolean enabled, int uploadBytesPerFrame) {
+		if (uploadBytesPerFrame < 1) {
+			throw new IllegalArgumentException(
+					"uploadBytesPerFrame must be at least 1");
+		}
+		asyncLoading = enabled;
+		this.uploadBytesPerFrame = uploadBytesPerFrame;
+	}
+
+	/**
+	 * Keep the decoded pixels of each texture (and each font's glyph
+	 * metrics) in the app's cache directory. After the GL context is lost,
+	 * e.g. every time the app goes to the background, textures are read back
+	 * and uploaded without decoding images or rendering fonts again. Note
+	 * this method should be called prior to calling
+	 * setRenderer(SpriteBatcher) on your GLSurfaceView. Default is off.
+	 * 
+	 * @param enabled
+	 * @param maxBytes
+	 *            size the cache is trimmed to, least recently used first
+	 * @param version
+	 *            cached textures from any other version are ignored. Change
+	 *            it whenever your images or fonts change, e.g. pass your app's
+	 *            versionCode.
+	 */
+	public void setTextureCache(boolean enabled, long maxBytes, int version) {
+		if (enabled) {
+			textureCache = new TextureCache(new File(context.getCacheDir(),
+					TEXTURE_CACHE_DIRECTORY), maxBytes, version);
+		} else {
+			textureCache = null;
+		}
+		for (int i = 0; i < drawOrder.size(); i++) {
+			drawOrder.get(i).cache = textureCache;
+		}
+	}
+
+	/**
+	 * Returns the number of textures read from the cache set up with
+	 * setTextureCache().
+	 * 
+	 * @return
+	 */
+	public int getTextureCacheHitCount() {
+		return textureCache == null ? 0 : textureCache.getHits();
+	}
+
+	/**
+	 * Returns the number of textures that had to be decoded because they
+	 * were not in the cache, or it was out of date.
+	 * 
+	 * @return
+	 */
+	public int getTextureCacheMissCount() {
+		return textureCache == null ? 0 : textureCache.getMisses();
+	}
+
+	/**
+	 * Reuse bitmaps while loading textures instead of allocating a new one
+	 * for each. Once a bitmap is uploaded it is kept, and the next texture
+	 * of the same size and config is decoded into it (on Honeycomb and
+	 * later), as are font and atlas bitmaps. Loading many textures then
+	 * allocates far less and triggers fewer garbage collections. Works best
+	 * when many textures share a size. Note this method should be called
+	 * prior to calling setRenderer(SpriteBatcher) on your GLSurfaceView.
+	 * Default is off.
+	 * 
+	 * @param enabled
+	 * @param maxBytes
+	 *            most memory kept in the pool, the oldest bitmaps are
+	 *            recycled beyond this
+	 */
+	public void setBitmapPool(boolean enabled, long maxBytes) {
+		if (bitmapPool != null) {
+			bitmapPool.clear();
+		}
+		bitmapPool = enabled ? new BitmapPool(maxBytes) : null;
+		for (int i = 0; i < drawOrder.size(); i++) {
+			drawOrder.get(i).pool = bitmapPool;
+		}
+	}
+
+	/**
+	 * Returns the number of bitmaps taken from the pool set up with
+	 * setBitmapPool() rather than allocated.
+	 * 
+	 * @return
+	 */
+	public int getBitmapPoolHitCount() {
+		return bitmapPool == null ? 0 : bitmapPool.getHits();
+	}
+
+	/**
+	 * Returns the number of bitmaps that had to be allocated because none in
+	 * the pool had the right size and config.
+	 * 
+	 * @return
+	 */
+	public int getBitmapPoolMissCount() {
+		return bitmapPool == null ? 0 : bitmapPool.getMisses();
+	}
+
+	/**
+	 * Declare a named group of textures, e.g. the textures for one level, so
+	 * they can be loaded and released together. Textures in a group are only
+	 * loaded and drawn while one of their groups is active, see
+	 * activateTextureGroup(). Textures in no group are always loaded.
+	 * Resource ids not passed into the constructor are added, drawn after
+	 * the others. Grouped textures are never atlas packed. Must be called
+	 * prior to calling setRenderer(SpriteBatcher) on your GLSurfaceView and
+	 * before addImage().
+	 * 
+	 * @param name
+	 * @param resourceIds
+	 *            same as for the constructor
+	 */
+	public void defineTextureGroup(String name, int[] resourceIds) {
+		if (surfaceCreated || dynamicAtlas != null) {
+			throw new IllegalStateException(
+					"Texture groups must be defined before setRenderer() and addImage()");
+		}
+		setUpTextureObjects(context, resourceIds);
+		TextureGroup group = textureGroups.get(name);
+		if (group == null) {
+			group = new TextureGroup();
+			textureGroups.put(name, group);
+		}
+		for (int i = 0; i < resourceIds.length; i++) {
+			Texture texture = texturesByResourceId.get(resourceIds[i]);
+			if (texture != null) {
+				group.add(texture);
+			}
+		}
+	}
+
+	/**
+	 * Start decoding a group's textures in the background, e.g. while the
+	 * previous level is still running. They are uploaded a few each frame
+	 * (see setAsyncLoading() for the budget) but not drawn until the group
+	 * is activated.
+	 * 
+	 * @param name
+	 */
+	public void prefetchTextureGroup(String name) {
+		TextureGroup group = getTextureGroup(name);
+		if (group != null && !group.active) {
+			group.prefetched = true;
+			if (surfaceCreated) {
+				prefetch(group);
+			}
+		}
+	}
+
+	/**
+	 * Make a group's textures drawable. Any that have not finished
+	 * prefetching are loaded now, so the whole group becomes drawable at
+	 * once. Call from your Drawer's onDrawFrame(), or before
+	 * setRenderer(SpriteBatcher) with gl null to load the group at start up.
+	 * 
+	 * @param gl
+	 * @param name
+	 */
+	public void activateTextureGroup(GL10 gl, String name) {
+		TextureGroup group = getTextureGroup(name);
+		if (group == null || group.active) {
+			return;
+		}
+		group.active = true;
+		group.prefetched = false;
+		for (int i = 0; i < group.textures.size(); i++) {
+			Texture texture = group.textures.get(i);
+			texture.activeGroupCount++;
+			if (gl != null && !texture.isReady()) {
+				loadTexture(gl, texture, false);
+			}
+		}
+	}
+
+	/**
+	 * Deactivate a group and delete its textures from OpenGL, apart from any
+	 * that are also in another active group. Also stops a prefetch. Call from
+	 * your Drawer's onDrawFrame().
+	 * 
+	 * @param gl
+	 * @param name
+	 */
+	public void releaseTextureGroup(GL10 gl, String name) {
+		TextureGroup group = getTextureGroup(name);
+		if (group == null) {
+			return;
+		}
+		for (int i = 0; i < group.textures.size(); i++) {
+			Texture texture = group.textures.get(i);
+			if (group.active) {
+				texture.activeGroupCount--;
+			}
+			if (!texture.isWanted() && texture.state != Texture.UNLOADED) {
+				// Anything still decoding is dropped when it arrives
+				texture.deleteTexture(gl);
+			}
+		}
+		group.active = false;
+		group.prefetched = false;
+	}
+
+	/**
+	 * Returns true once every texture in a group is loaded into OpenGL.
+	 * 
+	 * @param name
+	 * @return
+	 */
+	public boolean isTextureGroupReady(String name) {
+		TextureGroup group = getTextureGroup(name);
+		return group != null && group.isReady();
+	}
+
+	private TextureGroup getTextureGroup(String name) {
+		TextureGroup group = textureGroups.get(name);
+		if (group == null) {
+			Log.w(TAG, "Warning: no texture group called " + name);
+		}
+		return group;
+	}
+
+	private void prefetch(TextureGroup group) {
+		for (int i = 0; i < group.textures.size(); i++) {
+			Texture texture = group.textures.get(i);
+			if (texture.state == Texture.UNLOADED
+					&& texture.canDecodeInBackground()) {
+				getTextureLoader().load(texture, context);
+			}
+		}
+	}
+
+	/**
+	 * Limit how much memory textures may use in OpenGL. At the end of each
+	 * frame, textures are deleted least recently drawn first until the rest
+	 * fit, and loaded again when next drawn. Textures drawn in the current
+	 * frame are never deleted, so the budget can be exceeded. Sizes are
+	 * estimated as width * height * bytes per pixel. Pass 0 to keep every
+	 * texture loaded, which is the default.
+	 * 
+	 * @param budgetBytes
+	 */
+	public void setTextureMemoryBudget(long budgetBytes) {
+		if (budgetBytes < 0) {
+			throw new IllegalArgumentException(
+					"budgetBytes must not be negative");
+		}
+		if (budgetBytes == 0) {
+			residency = null;
+		} else if (residency == null) {
+			residency = new TextureResidency(budgetBytes);
+		} else {
+			residency.setBudget(budgetBytes);
+		}
+	}
+
+	/**
+	 * Returns the estimated bytes of texture memory currently in use.
+	 * 
+	 * @return
+	 */
+	public long getResidentTextureBytes() {
+		return TextureResidency.getResidentBytes(drawOrder);
+	}
+
+	/**
+	 * Returns the number of batches drawn with a texture that was already
+	 * loaded, while setTextureMemoryBudget() is on.
+	 * 
+	 * @return
+	 */
+	public int getTextureHitCount() {
+		return residency == null ? 0 : residency.getHits();
+	}
+
+	/**
+	 * Returns the number of batches that had to load their texture again
+	 * after it was evicted.
+	 * 
+	 * @return
+	 */
+	public int getTextureMissCount() {
+		return residency == null ? 0 : residency.getMisses();
+	}
+
+	/**
+	 * Returns the number of batches skipped because their texture was still
+	 * loading in the background. These are neither hits nor misses.
+	 * 
+	 * @return
+	 */
+	public int getTextureLoadingCount() {
+		return residency == null ? 0 : residency.getLoading();
+	}
+
+	/**
+	 * Returns the number of times loading a texture again failed. A texture
+	 * that fails is not drawn and is retried after a delay that doubles with
+	 * each failure, up to about 30 seconds at 60 frames per second.
+	 * 
+	 * @return
+	 */
+	public int getTextureLoadFailureCount() {
+		return residency == null ? 0 : residency.getFailures();
+	}
+
+	/**
+	 * Returns the number of textures deleted to stay within the memory
+	 * budget.
+	 * 
+	 * @return
+	 */
+	public int getTextureEvictionCount() {
+		return residency == null ? 0 : residency.getEvictions();
+	}
+
+	/**
+	 * Be told how long each texture took to decode and how long loading took
+	 * overall, e.g. to track start up time. Textures are decoded in parallel,
+	 * one thread per core, so the overall time is usually less than the sum.
+	 * 
+	 * @param listener
+	 *            or null to stop reporting
+	 */
+	public void setTextureLoadListener(TextureLoadListener listener) {
+		loadListener = listener;
+	}
+
+	/**
+	 * Returns true once a texture has been loaded into OpenGL and will be
+	 * drawn. Always true after onSurfaceCreated() unless setAsyncLoading()
+	 * is on.
+	 * 
+	 * @param resourceId
+	 * @return
+	 */
+	public boolean isTextureReady(int resourceId) {
+		Texture texture = texturesByResourceId.get(resourceId);
+		if (texture != null) {
+			return texture.getBatchTexture().isReady();
+		}
+		warnNotFound();
+		return false;
+	}
+
+	/**
+	 * Returns the number of textures still waiting to be decoded or uploaded.
+	 * 
+	 * @return
+	 */
+	public int getLoadingTextureCount() {
+		int loading = 0;
+		for (int i = 0; i < drawOrder.size(); i++) {
+			if (drawOrder.get(i).state == Texture.LOADING) {
+				loading++;
+			}
+		}
+		return loading;
+	}
+
+	/**
+	 * Pack the bitmaps of all drawable and expansion file textures into one
+	 * or a few shared textures (atlas pages) when the surface is first
+	 * created. Sprites from textures on the same page are then drawn in a
+	 * single batch, at the position in the draw order of the first of them.
+	 * The draw methods are unchanged, src coordinates are still relative to
+	 * each original texture. Fonts are never packed. Note this method should
+	 * be called prior to calling setRenderer(SpriteBatcher) on your
+	 * GLSurfaceView. Default is off.
+	 * 
+	 * @param enabled
+	 * @param maxPageSize
+	 *            largest width and height of a page in pixels, must be a power
+	 *            of 2. Textures bigger than this are left unpacked.
+	 */
+	public void setAtlasPacking(boolean enabled, int maxPageSize) {
+		if (Integer.bitCount(maxPageSize) != 1) {
+			throw new IllegalArgumentException(
+					"maxPageSize must be a power of 2");
+		}
+		atlasPacking = enabled;
+		atlasPageSize = maxPageSize;
+	}
+
+	/**
+	 * Decode and upload a texture in a smaller pixel format than the default
+	 * ARGB_8888, halving or quartering the memory and upload time it needs.
+	 * Textures not in ARGB_8888 are left out of atlas packing. Fonts are
+	 * always ALPHA_8 and cannot be changed. Note this method should be
+	 * called prior to calling setRenderer(SpriteBatcher) on your
+	 * GLSurfaceView.
+	 * 
+	 * @param resourceId
+	 * @param format
+	 * @param dither
+	 *            dither when reducing colour depth, which hides banding in
+	 *            gradients
+	 */
+	public void setTextureFormat(int resourceId, TextureFormat format,
+			boolean dither) {
+		Texture texture = texturesByResourceId.get(resourceId);
+		if (texture instanceof FontTexture) {
+			// Glyphs are always rendered in ALPHA_8
+			Log.w(TAG, "Warning: the format of a font cannot be changed");
+		} else if (texture != null) {
+			texture.format = format;
+			texture.dither = dither;
+		} else
+			warnNotFound();
+	}
+
+	/**
+	 * Build a chain of smaller copies of a texture when it is loaded, for
+	 * sprites drawn well below their size, e.g. in a zoomed out view. They
+	 * are sampled with GL_LINEAR_MIPMAP_NEAREST, which stops shimmering and
+	 * reads much less texture memory per pixel drawn, but the texture takes
+	 * a third more memory (included in getResidentTextureBytes()). Only
+	 * power of 2 textures loaded from bitmaps can be mipmapped, and they are
+	 * left out of atlas packing. Note this method should be called prior to
+	 * calling setRenderer(SpriteBatcher) on your GLSurfaceView. Default is
+	 * off.
+	 * 
+	 * @param resourceId
+	 * @param enabled
+	 */
+	public void setMipmaps(int resourceId, boolean enabled) {
+		Texture texture = texturesByResourceId.get(resourceId);
+		if (texture != null) {
+			texture.mipmaps = enabled;
+		} else
+			warnNotFound();
+	}
+
+	/**
+	 * Decode every drawable and expansion file texture below full
+	 * resolution, e.g. on low memory devices, without shipping separate
+	 * assets. Keep using full resolution pixel coordinates for src, they are
+	 * scaled to match. Fonts, tiled and ETC1 textures are always full
+	 * resolution. Use QualityTier.forDevice() to pick a tier by the device's
+	 * memory class. Must be called prior to calling
+	 * setRenderer(SpriteBatcher) on your GLSurfaceView. Default is
+	 * QualityTier.FULL.
+	 * 
+	 * @param tier
+	 */
+	public void setQualityTier(QualityTier tier) {
+		if (surfaceCreated) {
+			throw new IllegalStateException(
+					"Quality tier must be set before setRenderer()");
+		}
+		qualityTier = tier;
+		for (int i = 0; i < drawOrder.size(); i++) {
+			applyQualityTier(drawOrder.get(i));
+		}
+	}
+
+	private void applyQualityTier(Texture texture) {
+		if (texture.canDownsample()) {
+			texture.sampleSize = qualityTier.sampleSize;
+		}
+	}
+
+	/**
+	 * Keep a texture out of the atlas when using setAtlasPacking(). This is
+	 * needed for textures drawn with drawLine() or drawTile(), which rely on
+	 * the texture repeating.
+	 * 
+	 * @param resourceId
+	 */
+	public void excludeFromAtlas(int resourceId) {
+		Texture texture = texturesByResourceId.get(resourceId);
+		if (texture != null) {
+			texture.atlasExcluded = true;
+		} else
+			warnNotFound();
+	}
+
+	/**
+	 * Stream a large image, e.g. a world map, in tiles instead of loading it
+	 * whole. Only tiles drawn near the view are decoded, in the background,
+	 * and uploaded a few per frame; the least recently drawn are dropped as
+	 * the view moves. It is still drawn with draw() as a single image, src
+	 * in the image's own pixels, but only unrotated. Parts whose tiles are
+	 * not in yet are left out until they arrive. Lines, drawTile() and
+	 * SpriteLayers are not supported. Must be a drawable or expansion file
+	 * texture, and note this method should be called prior to calling
+	 * setRenderer(SpriteBatcher) on your GLSurfaceView.
+	 * 
+	 * @param resourceId
+	 * @param tileSize
+	 *            width and height of a tile in OpenGL in pixels, including a
+	 *            one pixel border. Must be a power of 2 between 64 and 1024.
+	 */
+	public void setTiledTexture(int resourceId, int tileSize) {
+		if (Integer.bitCount(tileSize) != 1 || tileSize < 64
+				|| tileSize > 1024) {
+			throw new IllegalArgumentException(
+					"tileSize must be a power of 2 between 64 and 1024");
+		}
+		if (surfaceCreated) {
+			throw new IllegalStateException(
+					"Tiled textures must be set before setRenderer()");
+		}
+		Texture texture = texturesByResourceId.get(resourceId);
+		if (texture == null) {
+			warnNotFound();
+			return;
+		}
+		if (!(texture instanceof BasicTexture || texture instanceof FileTexture)) {
+			throw new IllegalArgumentException(
+					"Only drawable and expansion file textures can be tiled");
+		}
+
+		// Takes the original's place everywhere it is referenced
+		TiledTexture tiled = new TiledTexture(texture, tileSize);
+		tiled.setViewport(viewport);
+		tiled.groupCount = texture.groupCount;
+		texturesByResourceId.put(resourceId, tiled);
+		int index = drawOrder.indexOf(texture);
+		drawOrder.set(index, tiled);
+		texturesByHandle[index] = tiled;
+		for (TextureGroup group : textureGroups.values()) {
+			int member = group.textures.indexOf(texture);
+			if (member >= 0) {
+				group.textures.set(member, tiled);
+			}
+		}
+		tiledTextures.add(tiled);
+	}
+
+	/**
+	 * Skip sprites that would be drawn entirely outside the view before any
+	 * of their vertex data is calculated. Sprites recorded into a SpriteLayer
+	 * are never culled. Default is off.
+	 * 
+	 * @param enabled
+	 * @param margin
+	 *            extra distance in pixels around the view within which
+	 *            sprites are still drawn
+	 */
+	public void setCulling(boolean enabled, int margin) {
+		viewport.setCulling(enabled, margin);
+	}
+
+	/**
+	 * Returns the number of sprites submitted to the draw methods during the
+	 * last complete frame, including any that were culled.
+	 * 
+	 * @return
+	 */
+	public int getSubmittedSpriteCount() {
+		return viewport.getLastSubmitted();
+	}
+
+	/**
+	 * Returns the number of sprites skipped by culling during the last
+	 * complete frame. See setCulling().
+	 * 
+	 * @return
+	 */
+	public int getCulledSpriteCount() {
+		return viewport.getLastCulled();
+	}
+
+	/**
+	 * Send sprites to OpenGL through vertex buffer objects rather than client
+	 * side arrays. Only has an effect on devices with OpenGL ES 1.1, on others
+	 * SpriteBatcher falls back to client side arrays. Note this method should
+	 * be called prior to calling setRenderer(SpriteBatcher) on your
+	 * GLSurfaceView, otherwise it will not take effect until the surface is
+	 * next created. Default is false.
+	 * 
+	 * @param useVertexBufferObjects
+	 */
+	public void setUseVertexBufferObjects(boolean useVertexBufferObjects) {
+		this.useVertexBufferObjects = useVertexBufferObjects;
+	}
+
+	/**
+	 * Returns true if sprites are currently being sent through vertex buffer
+	 * objects. Only meaningful after the surface has been created.
+	 * 
+	 * @return
+	 */
+	public boolean isUsingVertexBufferObjects() {
+		return renderer instanceof VboRenderer;
+	}
+
+	/**
+	 * Returns how many extra draw calls have been made since start up because
+	 * a single texture had more sprites in one batch than 16 bit indices can
+	 * address (16384). Each one means a batch was split in two.
+	 * 
+	 * @return
+	 */
+	public int getBatchSplitCount() {
+		return splitCount;
+	}
+
+	/**
+	 * Returns the number of times the sprite buffers have been reallocated
+	 * because a batch outgrew them. If this keeps climbing, consider a larger
+	 * initial capacity in setBufferCapacity().
+	 * 
+	 * @return
+	 */
+	public int getBufferReallocations() {
+		return stagingBuffers.getReallocations();
+	}
+
 	@Override
 	public void onSurfaceChanged(GL10 gl, int width, int height) {
 		// Stores width and height
 		this.width = width;
 		this.height = height;
+		viewport.setSize(width, height);
 		// Sets the current view port to the new size.
 		gl.glViewport(0, 0, width, height);
 		// Select the projection matrix
@@ -246,131 +1012,507 @@ public class SpriteBatcher implements Renderer {
 		gl.glEnable(GL10.GL_TEXTURE_2D);
 		// Tell OpenGL to enable the use of UV coordinates.
 		gl.glEnableClientState(GL10.GL_TEXTURE_COORD_ARRAY);
+		// Colour comes from each vertex rather than glColor4f
+		gl.glEnableClientState(GL10.GL_COLOR_ARRAY);
 		// Blending on
 		gl.glEnable(GL10.GL_BLEND);
 		gl.glBlendFunc(GL10.GL_SRC_ALPHA, GL10.GL_ONE_MINUS_SRC_ALPHA);
 
-		// Get unique texture ids
-		int[] textureIds = new int[texturesByResourceId.size()];
+		// Pick how vertex data is sent, falling back to client side arrays
+		// if buffer objects were not asked for or are not supported
+		if (useVertexBufferObjects && VboRenderer.isSupported(gl)) {
+			renderer = new VboRenderer(stagingBuffers);
+		} else {
+			renderer = new ClientArrayRenderer(stagingBuffers);
+		}
+		renderer.onSurfaceCreated(gl);
+		generateMipmaps = Mipmaps.isGenerateSupported(gl);
+		// Any geometry kept in buffer objects went with the old context
+		for (int i = 0; i < layers.size(); i++) {
+			layers.get(i).onSurfaceLost();
+		}
+		releasedLayers.clear();
+
+		loadStartTime = SystemClock.uptimeMillis();
+
+		// Pack textures into atlas pages the first time round, the pages
+		// then take their members' places in drawOrder
+		if (atlasPacking && atlasPages == null) {
+			packAtlas();
+		}
+
+		// Get unique texture ids, one per batch (atlas members share their
+		// page's texture)
+		int[] textureIds = new int[drawOrder.size()];
 		gl.glGenTextures(textureIds.length, textureIds, 0);
 
-		// Iterate over textures
-		Texture currentTexture;
-		for (int i = 0; i < texturesByResourceId.size(); i++) {
-			currentTexture = texturesByResourceId.valueAt(i);
-			// Assign texture id
-			currentTexture.setTextureId(textureIds[i]);
-			// Load bitmap into openGL
-			addTexture(gl, context, currentTexture, textureIds[i]);
+		// Assign texture ids
+		for (int i = 0; i < drawOrder.size(); i++) {
+			drawOrder.get(i).setTextureId(textureIds[i]);
+		}
+
+		// Load bitmaps into openGL, now or once decoded in the background.
+		// Anything loaded before went with the old context.
+		surfaceCreated = true;
+		if (textureLoader != null) {
+			textureLoader.onSurfaceCreated();
+		}
+		for (int i = 0; i < drawOrder.size(); i++) {
+			drawOrder.get(i).state = Texture.UNLOADED;
+		}
+		if (asyncLoading) {
+			Texture currentTexture;
+			for (int i = 0; i < drawOrder.size(); i++) {
+				currentTexture = drawOrder.get(i);
+				if (currentTexture.isWanted()) {
+					loadTexture(gl, currentTexture, true);
+				}
+			}
+		} else {
+			loadTextures(gl);
+		}
+		// Groups being prefetched carry on in the background
+		for (TextureGroup group : textureGroups.values()) {
+			if (group.prefetched && !group.active) {
+				prefetch(group);
+			}
+		}
+	}
+
+	// Load an unloaded texture into OpenGL, now or once decoded in the
+	// background
+	private void loadTexture(GL10 gl, Texture texture, boolean background) {
+		if (texture.getTextureId() == 0) {
+			int[] textureId = new int[1];
+			gl.glGenTextures(1, textureId, 0);
+			texture.setTextureId(textureId[0]);
+		}
+		if (background && texture.canDecodeInBackground()) {
+			getTextureLoader().load(texture, context);
+		} else {
+			addTexture(gl, context, texture, texture.getTextureId());
+		}
+	}
+
+	private TextureLoader getTextureLoader() {
+		if (textureLoader == null) {
+			textureLoader = new TextureLoader();
+		}
+		return textureLoader;
+	}
+
+	// Decode every texture at once across all cores, then upload them in
+	// draw order
+	private void loadTextures(GL10 gl) {
+		ArrayList<Texture> parallel = new ArrayList<Texture>();
+		for (int i = 0; i < drawOrder.size(); i++) {
+			if (drawOrder.get(i).canDecodeInBackground()
+					&& drawOrder.get(i).isWanted()) {
+				parallel.add(drawOrder.get(i));
+			}
+		}
+		long[] decodeMillis = new long[parallel.size()];
+		Bitmap[] bitmaps = TextureLoader.decodeAll(parallel, context,
+				decodeMillis);
+
+		int next = 0;
+		Texture currentTexture;
+		for (int i = 0; i < drawOrder.size(); i++) {
+			currentTexture = drawOrder.get(i);
+			if (next < parallel.size() && parallel.get(next) == currentTexture) {
+				Bitmap bitmap = bitmaps[next++];
+				if (bitmap != null) {
+					uploadTexture(gl, currentTexture,
+							currentTexture.getTextureId(), bitmap);
+				} else {
+					Log.e(TAG, "Error: could not load bitmap for texture");
+					currentTexture.state = Texture.UNLOADED;
+				}
+			} else if (currentTexture.isWanted()) {
+				addTexture(gl, context, currentTexture,
+						currentTexture.getTextureId());
+			}
+		}
+
+		if (loadListener != null) {
+			reportDecodeTimes(parallel, decodeMillis);
+			loadListener.onTexturesLoaded(SystemClock.uptimeMillis()
+					- loadStartTime);
+		}
+	}
+
+	private void reportDecodeTimes(ArrayList<Texture> textures,
+			long[] decodeMillis) {
+		for (int i = 0; i < textures.size(); i++) {
+			// Atlas pages are reported through their members
+			if (textures.get(i).resourceId != 0) {
+				loadListener.onTextureDecoded(textures.get(i).resourceId,
+						decodeMillis[i]);
+			}
+		}
+	}
+
+	private void packAtlas() {
+		atlasPages = new ArrayList<AtlasPage>();
+
+		// Decode everything that can go in an atlas
+		ArrayList<Texture> decoded = new ArrayList<Texture>();
+		for (int i = 0; i < drawOrder.size(); i++) {
+			Texture texture = drawOrder.get(i);
+			// Grouped textures come and go so are left on their own
+			// Pages are ARGB_8888, so only textures in that format are packed
+			// Smaller mip levels would blend neighbours, so no mipmaps either
+			if (texture.isAtlasCandidate() && !texture.atlasExcluded
+					&& texture.groupCount == 0 && !texture.mipmaps
+					&& texture.format == TextureFormat.ARGB_8888) {
+				decoded.add(texture);
+			}
+		}
+		long[] decodeMillis = new long[decoded.size()];
+		Bitmap[] decodedBitmaps = TextureLoader.decodeAll(decoded, context,
+				decodeMillis);
+		if (loadListener != null) {
+			reportDecodeTimes(decoded, decodeMillis);
+		}
+		ArrayList<Texture> candidates = new ArrayList<Texture>();
+		final ArrayList<Bitmap> bitmaps = new ArrayList<Bitmap>();
+		for (int i = 0; i < decoded.size(); i++) {
+			if (decodedBitmaps[i] != null) {
+				candidates.add(decoded.get(i));
+				bitmaps.add(decodedBitmaps[i]);
+			}
+		}
+
+		// Tallest first packs best
+		Integer[] order = new Integer[candidates.size()];
+		for (int i = 0; i < order.length; i++) {
+			order[i] = i;
+		}
+		Arrays.sort(order, new Comparator<Integer>() {
+			@Override
+			public int compare(Integer a, Integer b) {
+				return bitmaps.get(b).getHeight() - bitmaps.get(a).getHeight();
+			}
+		});
+
+		ArrayList<SkylinePacker> packers = new ArrayList<SkylinePacker>();
+		ArrayList<ArrayList<Integer>> pageMembers = new ArrayList<ArrayList<Integer>>();
+		int[][] positions = new int[candidates.size()][2];
+		for (int o = 0; o < order.length; o++) {
+			int index = order[o];
+			Bitmap bitmap = bitmaps.get(index);
+			int page = -1;
+			for (int p = 0; p < packers.size() && page == -1; p++) {
+				if (packers.get(p).insert(bitmap.getWidth(),
+						bitmap.getHeight(), positions[index])) {
+					page = p;
+				}
+			}
+			if (page == -1) {
+				SkylinePacker packer = new SkylinePacker(atlasPageSize,
+						atlasPageSize, ATLAS_PADDING);
+				if (packer.insert(bitmap.getWidth(), bitmap.getHeight(),
+						positions[index])) {
+					packers.add(packer);
+					pageMembers.add(new ArrayList<Integer>());
+					page = packers.size() - 1;
+				}
+			}
+			if (page == -1) {
+				// Bigger than a page, leave it as it is
+				candidates.get(index).releaseBitmap(bitmap);
+			} else {
+				pageMembers.get(page).add(index);
+			}
+		}
+
+		// Create the pages, each as small as its contents allow
+		for (int p = 0; p < packers.size(); p++) {
+			AtlasPage atlasPage = new AtlasPage(
+					nextPowerOfTwo(packers.get(p).getUsedWidth()),
+					nextPowerOfTwo(packers.get(p).getUsedHeight()));
+			atlasPage.setViewport(viewport);
+			atlasPage.cache = textureCache;
+			atlasPage.pool = bitmapPool;
+			ArrayList<Integer> members = pageMembers.get(p);
+			for (int m = 0; m < members.size(); m++) {
+				int index = members.get(m);
+				atlasPage.addMember(candidates.get(index),
+						positions[index][0], positions[index][1],
+						bitmaps.get(index));
+			}
+			atlasPages.add(atlasPage);
+
+			// Page is drawn where its first member was, members drop out
+			int first = drawOrder.size();
+			for (int m = 0; m < members.size(); m++) {
+				first = Math.min(first,
+						drawOrder.indexOf(candidates.get(members.get(m))));
+			}
+			drawOrder.add(first, atlasPage);
+			drawOrder.removeAll(atlasPage.getMembers());
+		}
+	}
+
+	protected static int nextPowerOfTwo(int value) {
+		int power = 1;
+		while (power < value) {
+			power <<= 1;
+		}
+		return power;
+	}
+
+	/**
+	 * Prematurely batch off all 'draws' made so far. This can be useful for
+	 * layering your sprites as all draws made so far will be below any
+	 * subsequent draws. NB Prematurely batching off your sprites is less
+	 * efficient and should be avoided where possible, by default sprites are
+	 * drawn in the order that you pass in the drawable resource ids in
+	 * SpriteBatcher's constructor.
+	 * 
+	 * @param gl
+	 */
+	public void batchDraw(GL10 gl) {
+		// All the draw commands are already batched together for each seperate
+		// texture tile. Now we loop through each tile and make the draw calls
+		// to OpenGL.
+		// NOTE: You can call this method early to send a batch. This gives you
+		// more control over layer order of the sprites.
+		renderer.begin(gl);
+		Texture currentTexture;
+
+		// Retained layers first, in the order drawLayer() was called
+		// NB Indexed loops rather than iterators so a frame allocates nothing
+		for (int l = 0; l < pendingLayers.size(); l++) {
+			SpriteLayer layer = pendingLayers.get(l);
+			for (int i = 0; i < drawOrder.size(); i++) {
+				currentTexture = drawOrder.get(i);
+				SpriteData layerSpriteData = layer
+						.findSpriteData(currentTexture);
+				if (layerSpriteData != null
+						&& layerSpriteData.getQuadCount() > 0
+						&& makeResident(gl, currentTexture)) {
+					drawSpriteData(gl, currentTexture, layerSpriteData, true);
+				}
+			}
+		}
+		pendingLayers.clear();
+
+		for (int i = 0; i < drawOrder.size(); i++) {
+			// GRAB TEXTURE
+			currentTexture = drawOrder.get(i);
+			// NB Colour is part of each vertex, so every sprite drawn with
+			// this texture goes out in one draw call whatever its tint
+			SpriteData currentSpriteData = currentTexture.getSpriteData();
+			if (currentSpriteData.getQuadCount() > 0
+					&& !makeResident(gl, currentTexture)) {
+				// Still loading, drop its sprites
+				currentSpriteData.clear();
+			} else if (drawSpriteData(gl, currentTexture, currentSpriteData,
+					false)) {
+				// Clear spriteData
+				currentSpriteData.clear();
+			}
+		}
+		renderer.end(gl);
+	}
+
+	private boolean drawSpriteData(GL10 gl, Texture texture,
+			SpriteData spriteData, boolean retained) {
+		int quadCount = spriteData.getQuadCount();
+
+		// ONLY DRAW IF THERE IS SOMETHING TO DRAW
+		if (quadCount == 0) {
+			return false;
+		}
+
+		// Tell OpenGL where our texture is located.
+		gl.glBindTexture(GL10.GL_TEXTURE_2D, texture.getTextureId());
+		int alphaTextureId = texture.getAlphaTextureId();
+		if (alphaTextureId != 0) {
+			setAlphaTexture(gl, alphaTextureId);
+		}
+
+		// 16 bit indices can only address QuadIndices.MAX_QUADS quads, so
+		// bigger batches are split into several draw calls in their original
+		// order
+		for (int firstQuad = 0; firstQuad < quadCount;
+				firstQuad += QuadIndices.MAX_QUADS) {
+			if (firstQuad > 0) {
+				splitCount++;
+			}
+			int quads = Math.min(quadCount - firstQuad, QuadIndices.MAX_QUADS);
+			if (retained) {
+				renderer.drawRetained(gl, spriteData, firstQuad, quads);
+			} else {
+				renderer.drawQuads(gl, spriteData.getVertices(), firstQuad,
+						quads);
+			}
+			count++;
+		}
+		if (alphaTextureId != 0) {
+			setAlphaTexture(gl, 0);
+		}
+		return true;
+	}
+
+	// Turn the second texture unit on with the given alpha texture, or off
+	// for 0. A GL_ALPHA texture modulated onto the first unit's result
+	// keeps its colour and multiplies in the alpha.
+	private void setAlphaTexture(GL10 gl, int alphaTextureId) {
+		gl.glActiveTexture(GL10.GL_TEXTURE1);
+		gl.glClientActiveTexture(GL10.GL_TEXTURE1);
+		if (alphaTextureId != 0) {
+			gl.glEnable(GL10.GL_TEXTURE_2D);
+			gl.glBindTexture(GL10.GL_TEXTURE_2D, alphaTextureId);
+			gl.glTexEnvf(GL10.GL_TEXTURE_ENV, GL10.GL_TEXTURE_ENV_MODE,
+					GL10.GL_MODULATE);
+			gl.glEnableClientState(GL10.GL_TEXTURE_COORD_ARRAY);
+		} else {
+			gl.glDisable(GL10.GL_TEXTURE_2D);
+			gl.glDisableClientState(GL10.GL_TEXTURE_COORD_ARRAY);
+		}
+		gl.glActiveTexture(GL10.GL_TEXTURE0);
+		gl.glClientActiveTexture(GL10.GL_TEXTURE0);
+		renderer.setSecondTexCoords(alphaTextureId != 0);
+	}
+
+	private void updateDynamicAtlas(GL10 gl) {
+		if (dynamicAtlas.applyChanges()) {
+			// Images have moved, so have their UVs
+			for (int i = 0; i < layers.size(); i++) {
+				layers.get(i).invalidate();
+			}
+		}
+		ArrayList<DynamicAtlasPage> pages = dynamicAtlas.getPages();
+		for (int i = 0; i < pages.size(); i++) {
+			DynamicAtlasPage page = pages.get(i);
+			if (page.getTextureId() == 0) {
+				// New page, drawn after everything passed into the
+				// constructor. After a lost context it is reloaded with
+				// them in onSurfaceCreated.
+				int[] textureId = new int[1];
+				gl.glGenTextures(1, textureId, 0);
+				page.setTextureId(textureId[0]);
+				drawOrder.add(page);
+			}
+			if (page.isFullUploadNeeded()) {
+				addTexture(gl, context, page, page.getTextureId());
+				page.setUploaded();
+			} else {
+				page.uploadPending(gl);
+			}
+		}
+	}
+
+	// Returns true if texture is in OpenGL and can be drawn, loading it
+	// again first if it was evicted
+	private boolean makeResident(GL10 gl, Texture texture) {
+		if (!texture.isWanted()) {
+			// Its groups are not active
+			return false;
 		}
+		if (residency != null && residency.touch(texture)) {
+			loadTexture(gl, texture, asyncLoading);
+			if (texture.state == Texture.UNLOADED) {
+				residency.loadFailed(texture);
+			}
+		}
+		return texture.isReady();
 	}
 
-	/**
-	 * Prematurely batch off all 'draws' made so far. This can be useful for
-	 * layering your sprites as all draws made so far will be below any
-	 * subsequent draws. NB Prematurely batching off your sprites is less
-	 * efficient and should be avoided where possible, by default sprites are
-	 * drawn in the order that you pass in the drawable resource ids in
-	 * SpriteBatcher's constructor.
-	 * 
-	 * @param gl
-	 */
-	public void batchDraw(GL10 gl) {
-		// All the draw commands are already batched together for each seperate
-		// texture tile. Now we loop through each tile and make the draw calls
-		// to OpenGL.
-		// NOTE: You can call this method early to send a batch. This gives you
-		// more control over layer order of the sprites.
-		Texture currentTexture;
-		for (Iterator<Texture> i = drawOrder.iterator(); i.hasNext();) {
-			// GRAB TEXTURE
-			currentTexture = i.next();
-			SparseArray<SpriteData> array = currentTexture.getSpriteData();
-
-			// NB Each texture can have multiple spritedatas to support
-			// different gl.glColor4f(r, g, b, a) parameters. This allows alpha
-			// and colour effects
-			for (int j = 0; j < array.size(); j++) {
-				// GRAB SPRITEDATA
-				SpriteData currentSpriteData = array.valueAt(j);
-
-				// CONVERT INTO ARRAY
-				float[] vertices = currentSpriteData.getVertices();
-				short[] indices = currentSpriteData.getIndices();
-				float[] textureCoords = currentSpriteData.getTextureCoords();
-
-				// ONLY DRAW IF ALL NOT NULL
-				if (vertices != null && indices != null
-						&& textureCoords != null) {
-
-					// CREATE BUFFERS - these are just containers for sending
-					// the
-					// draw information we have already collected to OpenGL
-
-					// Vertex buffer (position information of every draw
-					// command)
-					ByteBuffer vbb = ByteBuffer
-							.allocateDirect(vertices.length * 4);
-					vbb.order(ByteOrder.nativeOrder());
-					FloatBuffer vertexBuffer = vbb.asFloatBuffer();
-					vertexBuffer.put(vertices);
-					vertexBuffer.position(0);
-
-					// Index buffer (which vertices go together to make the
-					// elements)
-					ByteBuffer ibb = ByteBuffer
-							.allocateDirect(indices.length * 2);
-					ibb.order(ByteOrder.nativeOrder());
-					ShortBuffer indexBuffer = ibb.asShortBuffer();
-					indexBuffer.put(indices);
-					indexBuffer.position(0);
-
-					// How to paste the texture over each element so that the
-					// right
-					// image is shown
-					ByteBuffer tbb = ByteBuffer
-							.allocateDirect(textureCoords.length * 4);
-					tbb.order(ByteOrder.nativeOrder());
-					FloatBuffer textureBuffer = tbb.asFloatBuffer();
-					textureBuffer.put(textureCoords);
-					textureBuffer.position(0);
-
-					// CONVERT RGBA TO SEPERATE VALUES
-					int color = currentSpriteData.getARGB();
-					float r = (float) Color.red(color) / 255;
-					float g = (float) Color.green(color) / 255;
-					float b = (float) Color.blue(color) / 255;
-					float a = (float) Color.alpha(color) / 255;
-
-					// DRAW COMMAND
-					gl.glColor4f(r, g, b, a);
-					// Tell OpenGL where our texture is located.
-					gl.glBindTexture(GL10.GL_TEXTURE_2D,
-							currentTexture.getTextureId());
-					// Telling OpenGL where our textureCoords are.
-					gl.glTexCoordPointer(2, GL10.GL_FLOAT, 0, textureBuffer);
-					// Specifies the location and data format of the array of
-					// vertex
-					// coordinates to use when rendering.
-					gl.glVertexPointer(3, GL10.GL_FLOAT, 0, vertexBuffer);
-					// Draw elements command using indices so it knows which
-					// vertices go together to form each element
-					gl.glDrawElements(GL10.GL_TRIANGLES, indices.length,
-							GL10.GL_UNSIGNED_SHORT, indexBuffer);
-					count++;
-
-					// Clear spriteData
-					currentSpriteData.clear();
+	// Upload bitmaps decoded by the loader, stopping once this frame's
+	// budget is used. At least one goes up each frame however big it is.
+	private void uploadLoadedTextures(GL10 gl) {
+		int uploadedBytes = 0;
+		boolean finished = false;
+		TextureLoader.LoadedBitmap loaded;
+		while (uploadedBytes < uploadBytesPerFrame
+				&& (loaded = textureLoader.poll()) != null) {
+			finished = true;
+			if (loaded.texture.state != Texture.LOADING) {
+				// Released, or loaded on the spot by activateTextureGroup()
+				if (loaded.bitmap != null) {
+					loaded.texture.releaseBitmap(loaded.bitmap);
 				}
+				continue;
+			}
+			if (loaded.bitmap == null) {
+				loaded.texture.state = Texture.UNLOADED;
+				if (residency != null) {
+					residency.loadFailed(loaded.texture);
+				}
+				continue;
+			}
+			if (loaded.texture.getTextureId() == 0) {
+				int[] textureId = new int[1];
+				gl.glGenTextures(1, textureId, 0);
+				loaded.texture.setTextureId(textureId[0]);
+			}
+			uploadedBytes += loaded.bitmap.getRowBytes()
+					* loaded.bitmap.getHeight();
+			uploadTexture(gl, loaded.texture, loaded.texture.getTextureId(),
+					loaded.bitmap);
+			if (loadListener != null && loaded.texture.resourceId != 0) {
+				loadListener.onTextureDecoded(loaded.texture.resourceId,
+						loaded.decodeMillis);
 			}
 		}
+		if (finished && loadListener != null && getLoadingTextureCount() == 0) {
+			loadListener.onTexturesLoaded(SystemClock.uptimeMillis()
+					- loadStartTime);
+		}
 	}
 
 	private void addTexture(GL10 gl, Context context, Texture texture,
 			int textureId) {
+		// Compressed and tiled textures fill the texture themselves
+		bindNewTexture(gl, textureId);
+		if (texture.uploadDirect(gl, context)) {
+			texture.state = Texture.READY;
+			return;
+		}
+
 		// Get bitmap
-		Bitmap bitmap = texture.getBitmap(context);
-		
+		Bitmap bitmap = texture.loadBitmap(context);
+		if (bitmap == null) {
+			Log.e(TAG, "Error: could not load bitmap for texture");
+			texture.state = Texture.UNLOADED;
+			return;
+		}
+		uploadTexture(gl, texture, textureId, bitmap);
+	}
+
+	private void uploadTexture(GL10 gl, Texture texture, int textureId,
+			Bitmap bitmap) {
+		bindNewTexture(gl, textureId);
+		boolean mipmapped = texture.mipmaps && Mipmaps.canMipmap(bitmap);
+		if (texture.mipmaps && !mipmapped) {
+			Log.w(TAG, "Warning: only power of 2 textures can be mipmapped");
+		}
+		if (mipmapped) {
+			Mipmaps.setUp(gl, generateMipmaps);
+		}
+
+		// Attach bitmap to current texture
+		GLUtils.texImage2D(GL10.GL_TEXTURE_2D, 0, texture.format.glFormat,
+				bitmap, texture.format.glType, 0);
+		if (mipmapped && !generateMipmaps) {
+			Mipmaps.uploadLevels(gl, bitmap, texture.format, texture.dither);
+		}
+
+		// Add dimensional info to spritedata
+		texture.setDimensions(bitmap.getWidth(), bitmap.getHeight());
+		texture.residentBytes = bitmap.getRowBytes() * bitmap.getHeight();
+		if (mipmapped) {
+			texture.residentBytes = Mipmaps
+					.getChainBytes(texture.residentBytes);
+		}
+		texture.releaseBitmap(bitmap);
+		texture.state = Texture.READY;
+	}
+
+	private void bindNewTexture(GL10 gl, int textureId) {
 		// Working with textureId
 		gl.glBindTexture(GL10.GL_TEXTURE_2D, textureId);
 
@@ -386,13 +1528,6 @@ public class SpriteBatcher implements Renderer {
 				GL10.GL_REPEAT);
 		gl.glTexParameterf(GL10.GL_TEXTURE_2D, GL10.GL_TEXTURE_WRAP_T,
 				GL10.GL_REPEAT);
-
-		// Attach bitmap to current texture
-		GLUtils.texImage2D(GL10.GL_TEXTURE_2D, 0, bitmap, 0);
-
-		// Add dimensional info to spritedata
-		texture.setDimensions(bitmap.getWidth(), bitmap.getHeight());
-		bitmap.recycle();
 	}
 
 	/**
@@ -433,6 +1568,117 @@ public class SpriteBatcher implements Renderer {
 		}
 	}
 
+	// ----------- RETAINED LAYERS --------------------
+
+	/**
+	 * Create a layer that keeps its sprites between frames. Use it for
+	 * anything that does not change from frame to frame, e.g. backgrounds or
+	 * HUD frames:
+	 * 
+	 * <pre>
+	 * if (!layer.isBuilt()) {
+	 * 	spriteBatcher.beginLayer(layer);
+	 * 	// ... normal draw calls ...
+	 * 	spriteBatcher.endLayer();
+	 * }
+	 * spriteBatcher.drawLayer(layer);
+	 * </pre>
+	 * 
+	 * Free it with releaseLayer() once it is no longer needed.
+	 * 
+	 * @return a new, empty layer
+	 */
+	public SpriteLayer createLayer() {
+		SpriteLayer layer = new SpriteLayer();
+		layers.add(layer);
+		return layer;
+	}
+
+	/**
+	 * Start recording into a layer. Until endLayer() is called every draw
+	 * method adds to the layer instead of the current frame. Any geometry
+	 * already in the layer is thrown away first.
+	 * 
+	 * @param layer
+	 */
+	public void beginLayer(SpriteLayer layer) {
+		if (recordingLayer != null) {
+			throw new IllegalStateException(
+					"beginLayer() called while already recording a layer");
+		}
+		if (!layers.contains(layer)) {
+			throw new IllegalArgumentException(
+					"beginLayer() called with a released layer");
+		}
+		layer.invalidate();
+		recordingLayer = layer;
+		for (int i = 0; i < texturesByHandle.length; i++) {
+			texturesByHandle[i].setRecordingLayer(layer);
+		}
+		if (dynamicAtlas != null) {
+			dynamicAtlas.setRecordingLayer(layer);
+		}
+	}
+
+	/**
+	 * Stop recording into the current layer. It is now built and can be
+	 * drawn with drawLayer() every frame until invalidated. If any texture
+	 * drawn into it was still loading (see setAsyncLoading()) the layer is
+	 * left unbuilt, so it is recorded again once isBuilt() is checked next
+	 * frame.
+	 */
+	public void endLayer() {
+		if (recordingLayer == null) {
+			throw new IllegalStateException(
+					"endLayer() called without beginLayer()");
+		}
+		recordingLayer.setBuilt();
+		recordingLayer = null;
+		for (int i = 0; i < texturesByHandle.length; i++) {
+			texturesByHandle[i].setRecordingLayer(null);
+		}
+		if (dynamicAtlas != null) {
+			dynamicAtlas.setRecordingLayer(null);
+		}
+	}
+
+	/**
+	 * Draw a built layer this frame. Layers are sent at the start of the next
+	 * batchDraw, below the sprites drawn normally in the same batch. To put a
+	 * layer on top of other sprites call batchDraw(gl) before drawLayer().
+	 * 
+	 * @param layer
+	 */
+	public void drawLayer(SpriteLayer layer) {
+		if (layer.isBuilt()) {
+			pendingLayers.add(layer);
+		}
+	}
+
+	/**
+	 * Free a layer that is no longer needed, e.g. when the level it was built
+	 * for is unloaded. Its geometry and any buffer objects holding it are
+	 * released at the start of the next frame. Do not use the layer again
+	 * afterwards, create a new one with createLayer().
+	 * 
+	 * @param layer
+	 */
+	public void releaseLayer(SpriteLayer layer) {
+		if (layer == recordingLayer) {
+			throw new IllegalStateException(
+					"releaseLayer() called while recording that layer");
+		}
+		if (layers.remove(layer)) {
+			// Drawn this frame but not sent yet
+			for (int i = pendingLayers.size() - 1; i >= 0; i--) {
+				if (pendingLayers.get(i) == layer) {
+					pendingLayers.remove(i);
+				}
+			}
+			releasedLayers.add(layer);
+		}
+	}
+
 	// ----------- DRAW METHODS --------------------
 
 	// SIMPLE
@@ -442,7 +1688,7 @@ public class SpriteBatcher implements Renderer {
 		if (texture != null) {
 			texture.addSprite(src, dst);
 		} else
-			Log.w("SpriteBatcher", "Warning: resourceId not found");
+			warnNotFound();
 	}
 
 	public void draw(int resourceId, Rect src, Rect dst, int angle) {
@@ -451,7 +1697,7 @@ public class SpriteBatcher implements Renderer {
 		if (texture != null) {
 			texture.addSprite(src, dst, angle);
 		} else
-			Log.w("SpriteBatcher", "Warning: resourceId not found");
+			warnNotFound();
 	}
 
 	public void draw(int resourceId, Rect src, Rect dst, int angle, int argb) {
@@ -461,7 +1707,7 @@ public class SpriteBatcher implements Renderer {
 		if (texture != null) {
 			texture.addSprite(src, dst, angle, argb);
 		} else
-			Log.w("SpriteBatcher", "Warning: resourceId not found");
+			warnNotFound();
 	}
 
 	// COMPLICATED
@@ -478,7 +1724,7 @@ public class SpriteBatcher implements Renderer {
 		if (texture != null) {
 			texture.addSprite(src, drawX, drawY, hotRect, angle, sizeX, sizeY);
 		} else
-			Log.w("SpriteBatcher", "Warning: resourceId not found");
+			warnNotFound();
 	}
 
 	public void draw(int resourceId, Rect src, int drawX, int drawY,
@@ -489,7 +1735,56 @@ public class SpriteBatcher implements Renderer {
 			texture.addSprite(src, drawX, drawY, hotRect, angle, sizeX, sizeY,
 					argb);
 		} else
-			Log.w("SpriteBatcher", "Warning: resourceId not found");
+			warnNotFound();
+	}
+
+	// PRIMITIVE - same as above without Rects, so nothing is allocated
+	public void draw(int resourceId, int srcLeft, int srcTop, int srcRight,
+			int srcBottom, int dstX, int dstY, int w, int h) {
+		Texture texture = texturesByResourceId.get(resourceId);
+		if (texture != null) {
+			texture.addSprite(srcLeft, srcTop, srcRight, srcBottom, dstX, dstY,
+					w, h);
+		} else
+			warnNotFound();
+	}
+
+	public void draw(int resourceId, int srcLeft, int srcTop, int srcRight,
+			int srcBottom, int dstX, int dstY, int w, int h, int angle) {
+		draw(resourceId, srcLeft, srcTop, srcRight, srcBottom, dstX, dstY, w,
+				h, angle, Texture.DEFAULT_ARGB);
+	}
+
+	public void draw(int resourceId, int srcLeft, int srcTop, int srcRight,
+			int srcBottom, int dstX, int dstY, int w, int h, int angle,
+			int argb) {
+		Texture texture = texturesByResourceId.get(resourceId);
+		if (texture != null) {
+			texture.addSprite(srcLeft, srcTop, srcRight, srcBottom, dstX, dstY,
+					w, h, angle, argb);
+		} else
+			warnNotFound();
+	}
+
+	public void draw(int resourceId, int srcLeft, int srcTop, int srcRight,
+			int srcBottom, int drawX, int drawY, int hotLeft, int hotTop,
+			int hotRight, int hotBottom, int angle, float sizeX, float sizeY) {
+		draw(resourceId, srcLeft, srcTop, srcRight, srcBottom, drawX, drawY,
+				hotLeft, hotTop, hotRight, hotBottom, angle, sizeX, sizeY,
+				Texture.DEFAULT_ARGB);
+	}
+
+	public void draw(int resourceId, int srcLeft, int srcTop, int srcRight,
+			int srcBottom, int drawX, int drawY, int hotLeft, int hotTop,
+			int hotRight, int hotBottom, int angle, float sizeX, float sizeY,
+			int argb) {
+		Texture texture = texturesByResourceId.get(resourceId);
+		if (texture != null) {
+			texture.addSprite(srcLeft, srcTop, srcRight, srcBottom, drawX,
+					drawY, hotLeft, hotTop, hotRight, hotBottom, angle, sizeX,
+					sizeY, argb);
+		} else
+			warnNotFound();
 	}
 
 	/**
@@ -542,20 +1837,30 @@ public class SpriteBatcher implements Renderer {
 		// Draw text. x and y are top left corner of text line
 		Texture texture = texturesByResourceId.get(resourceId);
 		if (texture != null) {
-			// Try casting to a FontTexture
-			FontTexture fontTexture = null;
-			try {
-				fontTexture = (FontTexture) texture;
-			} catch (ClassCastException e) {
-				Log.e(TAG,
-						"Error: Tried to drawText() with non-font resourceId!",
-						e);
-				return;
-			}
-			// Draw text
-			fontTexture.drawText(text, x, y, scale, argb);
+			drawText(texture, text, x, y, scale, argb);
 		} else
-			Log.w("SpriteBatcher", "Warning: resourceId not found");
+			warnNotFound();
+	}
+
+	private void drawText(Texture texture, String text, int x, int y,
+			float scale, int argb) {
+		// Try casting to a FontTexture
+		FontTexture fontTexture = null;
+		try {
+			fontTexture = (FontTexture) texture;
+		} catch (ClassCastException e) {
+			Log.e(TAG, "Error: Tried to drawText() with non-font resourceId!",
+					e);
+			return;
+		}
+		// Glyph metrics are filled in while the bitmap is decoded, which may
+		// still be happening on the loader thread. An evicted font keeps its
+		// metrics and is drawn, which loads it again.
+		if (fontTexture.state == Texture.LOADING) {
+			return;
+		}
+		// Draw text
+		fontTexture.drawText(text, x, y, scale, argb);
 	}
 
 	/**
@@ -577,7 +1882,7 @@ public class SpriteBatcher implements Renderer {
 		if (texture != null) {
 			texture.drawLine(src, x1, y1, x2, y2, width);
 		} else
-			Log.w("SpriteBatcher", "Warning: resourceId not found");
+			warnNotFound();
 	}
 
 	/**
@@ -595,6 +1900,314 @@ public class SpriteBatcher implements Renderer {
 		if (texture != null) {
 			texture.drawTile(dst, offsetX, offsetY, scale);
 		} else
-			Log.w("SpriteBatcher", "Warning: resourceId not found");
+			warnNotFound();
+	}
+
+	public void drawLine(int resourceId, int srcLeft, int srcTop,
+			int srcRight, int srcBottom, int x1, int y1, int x2, int y2,
+			int width) {
+		Texture texture = texturesByResourceId.get(resourceId);
+		if (texture != null) {
+			texture.drawLine(srcLeft, srcTop, srcRight, srcBottom, x1, y1, x2,
+					y2, width);
+		} else
+			warnNotFound();
+	}
+
+	public void drawTile(int resourceId, int dstLeft, int dstTop,
+			int dstRight, int dstBottom, int offsetX, int offsetY, float scale) {
+		Texture texture = texturesByResourceId.get(resourceId);
+		if (texture != null) {
+			texture.drawTile(dstLeft, dstTop, dstRight, dstBottom, offsetX,
+					offsetY, scale);
+		} else
+			warnNotFound();
+	}
+
+	// ----------- HANDLE DRAW METHODS --------------------
+	// Same as the draw methods above but take a texture handle from
+	// getTextureHandle() instead of a resource id, which skips the resource
+	// id lookup on every call.
+
+	/**
+	 * Returns a handle for the texture of a resource id passed into the
+	 * constructor, for use with the drawByHandle() methods. Look handles up
+	 * once, e.g. when your Drawer is created, and keep them.
+	 * 
+	 * @param resourceId
+	 * @return the handle, or INVALID_HANDLE if the resource id is not known
+	 */
+	public int getTextureHandle(int resourceId) {
+		Texture texture = texturesByResourceId.get(resourceId);
+		if (texture != null) {
+			for (int i = 0; i < texturesByHandle.length; i++) {
+				if (texturesByHandle[i] == texture) {
+					return i;
+				}
+			}
+		}
+		return INVALID_HANDLE;
+	}
+
+	public void drawByHandle(int handle, Rect src, Rect dst) {
+		Texture texture = getTexture(handle);
+		if (texture != null) {
+			texture.addSprite(src, dst);
+		}
+	}
+
+	public void drawByHandle(int handle, Rect src, Rect dst, int angle) {
+		Texture texture = getTexture(handle);
+		if (texture != null) {
+			texture.addSprite(src, dst, angle);
+		}
+	}
+
+	public void drawByHandle(int handle, Rect src, Rect dst, int angle,
+			int argb) {
+		Texture texture = getTexture(handle);
+		if (texture != null) {
+			texture.addSprite(src, dst, angle, argb);
+		}
+	}
+
+	public void drawByHandle(int handle, Rect src, int drawX, int drawY,
+			Rect hotRect, int angle, float scale) {
+		drawByHandle(handle, src, drawX, drawY, hotRect, angle, scale, scale);
+	}
+
+	public void drawByHandle(int handle, Rect src, int drawX, int drawY,
+			Rect hotRect, int angle, float sizeX, float sizeY) {
+		Texture texture = getTexture(handle);
+		if (texture != null) {
+			texture.addSprite(src, drawX, drawY, hotRect, angle, sizeX, sizeY);
+		}
+	}
+
+	public void drawByHandle(int handle, Rect src, int drawX, int drawY,
+			Rect hotRect, int angle, float sizeX, float sizeY, int argb) {
+		Texture texture = getTexture(handle);
+		if (texture != null) {
+			texture.addSprite(src, drawX, drawY, hotRect, angle, sizeX, sizeY,
+					argb);
+		}
+	}
+
+	public void drawTextByHandle(int handle, String text, int x, int y,
+			float scale) {
+		drawTextByHandle(handle, text, x, y, scale, Texture.DEFAULT_ARGB);
+	}
+
+	public void drawTextByHandle(int handle, String text, int x, int y,
+			float scale, int argb) {
+		Texture texture = getTexture(handle);
+		if (texture != null) {
+			drawText(texture, text, x, y, scale, argb);
+		}
+	}
+
+	public void drawLineByHandle(int handle, Rect src, int x1, int y1,
+			int x2, int y2, int width) {
+		Texture texture = getTexture(handle);
+		if (texture != null) {
+			texture.drawLine(src, x1, y1, x2, y2, width);
+		}
+	}
+
+	public void drawTileByHandle(int handle, Rect dst, int offsetX,
+			int offsetY, float scale) {
+		Texture texture = getTexture(handle);
+		if (texture != null) {
+			texture.drawTile(dst, offsetX, offsetY, scale);
+		}
+	}
+
+	public void drawByHandle(int handle, int srcLeft, int srcTop,
+			int srcRight, int srcBottom, int dstX, int dstY, int w, int h) {
+		Texture texture = getTexture(handle);
+		if (texture != null) {
+			texture.addSprite(srcLeft, srcTop, srcRight, srcBottom, dstX, dstY,
+					w, h);
+		}
+	}
+
+	public void drawByHandle(int handle, int srcLeft, int srcTop,
+			int srcRight, int srcBottom, int dstX, int dstY, int w, int h,
+			int angle) {
+		drawByHandle(handle, srcLeft, srcTop, srcRight, srcBottom, dstX, dstY,
+				w, h, angle, Texture.DEFAULT_ARGB);
+	}
+
+	public void drawByHandle(int handle, int srcLeft, int srcTop,
+			int srcRight, int srcBottom, int dstX, int dstY, int w, int h,
+			int angle, int argb) {
+		Texture texture = getTexture(handle);
+		if (texture != null) {
+			texture.addSprite(srcLeft, srcTop, srcRight, srcBottom, dstX, dstY,
+					w, h, angle, argb);
+		}
+	}
+
+	public void drawByHandle(int handle, int srcLeft, int srcTop,
+			int srcRight, int srcBottom, int drawX, int drawY, int hotLeft,
+			int hotTop, int hotRight, int hotBottom, int angle, float sizeX,
+			float sizeY) {
+		drawByHandle(handle, srcLeft, srcTop, srcRight, srcBottom, drawX,
+				drawY, hotLeft, hotTop, hotRight, hotBottom, angle, sizeX,
+				sizeY, Texture.DEFAULT_ARGB);
+	}
+
+	public void drawByHandle(int handle, int srcLeft, int srcTop,
+			int srcRight, int srcBottom, int drawX, int drawY, int hotLeft,
+			int hotTop, int hotRight, int hotBottom, int angle, float sizeX,
+			float sizeY, int argb) {
+		Texture texture = getTexture(handle);
+		if (texture != null) {
+			texture.addSprite(srcLeft, srcTop, srcRight, srcBottom, drawX,
+					drawY, hotLeft, hotTop, hotRight, hotBottom, angle, sizeX,
+					sizeY, argb);
+		}
+	}
+
+	public void drawLineByHandle(int handle, int srcLeft, int srcTop,
+			int srcRight, int srcBottom, int x1, int y1, int x2, int y2,
+			int width) {
+		Texture texture = getTexture(handle);
+		if (texture != null) {
+			texture.drawLine(srcLeft, srcTop, srcRight, srcBottom, x1, y1, x2,
+					y2, width);
+		}
+	}
+
+	public void drawTileByHandle(int handle, int dstLeft, int dstTop,
+			int dstRight, int dstBottom, int offsetX, int offsetY, float scale) {
+		Texture texture = getTexture(handle);
+		if (texture != null) {
+			texture.drawTile(dstLeft, dstTop, dstRight, dstBottom, offsetX,
+					offsetY, scale);
+		}
+	}
+
+	// ----------- DYNAMIC ATLAS --------------------
+	// Images that are only known at runtime share a few atlas pages rather
+	// than having a texture each.
+
+	/**
+	 * Set the size and number of the pages used by addImage(). Must be called
+	 * before the first addImage(). Default is up to 4 pages of 1024x1024.
+	 * 
+	 * @param pageSize
+	 *            width and height of each page in pixels, must be a power of 2
+	 * @param maxPages
+	 *            most pages that will be created, images that do not fit are
+	 *            not drawn
+	 */
+	public void setDynamicAtlas(int pageSize, int maxPages) {
+		if (Integer.bitCount(pageSize) != 1) {
+			throw new IllegalArgumentException("pageSize must be a power of 2");
+		}
+		if (maxPages < 1) {
+			throw new IllegalArgumentException("maxPages must be at least 1");
+		}
+		if (dynamicAtlas != null) {
+			throw new IllegalStateException(
+					"setDynamicAtlas() must be called before addImage()");
+		}
+		dynamicPageSize = pageSize;
+		dynamicMaxPages = maxPages;
+	}
+
+	/**
+	 * Add an image at runtime. It is packed into a shared atlas page and
+	 * uploaded at the start of the next frame, until then draws with its
+	 * handle are skipped. Draw it with the drawByHandle() methods, src
+	 * coordinates are relative to the bitmap. Images are drawn after the
+	 * textures passed into the constructor. drawLine() and drawTile() will
+	 * not repeat the image. Call from your Drawer's onDrawFrame(), i.e. on
+	 * the GL thread.
+	 * 
+	 * @param bitmap
+	 *            kept until removeImage() so the image can be moved or
+	 *            reloaded, do not recycle it before then
+	 * @return the handle
+	 */
+	public int addImage(Bitmap bitmap) {
+		if (dynamicAtlas == null) {
+			dynamicAtlas = new DynamicAtlas(dynamicPageSize, dynamicMaxPages,
+					viewport);
+		}
+		return texturesByHandle.length + dynamicAtlas.add(bitmap);
+	}
+
+	/**
+	 * Remove an image added with addImage(), freeing its space in the atlas.
+	 * The handle may be given to a later image.
+	 * 
+	 * @param handle
+	 */
+	public void removeImage(int handle) {
+		if (dynamicAtlas == null
+				|| !dynamicAtlas.remove(handle - texturesByHandle.length)) {
+			warnNotFound();
+		}
+	}
+
+	/**
+	 * Returns the number of textures created for images added with
+	 * addImage().
+	 * 
+	 * @return
+	 */
+	public int getDynamicPageCount() {
+		return dynamicAtlas == null ? 0 : dynamicAtlas.getPages().size();
+	}
+
+	/**
+	 * Returns the number of times a dynamic atlas page has been repacked to
+	 * make room. Each repack uploads the whole page again and invalidates
+	 * every SpriteLayer.
+	 * 
+	 * @return
+	 */
+	public int getDefragmentCount() {
+		return dynamicAtlas == null ? 0 : dynamicAtlas.getDefragmentCount();
+	}
+
+	private Texture getTexture(int handle) {
+		if (handle >= 0 && handle < texturesByHandle.length) {
+			return texturesByHandle[handle];
+		}
+		if (dynamicAtlas != null) {
+			DynamicImage image = dynamicAtlas.getImage(handle
+					- texturesByHandle.length);
+			if (image != null) {
+				// Not drawable until it has been placed in a page
+				return image.isReady() ? image : null;
+			}
+		}
+		warnNotFound();
+		return null;
+	}
+
+	// Draw calls with an unknown resource id or handle are counted rather
+	// than logged every time, the log is limited to one line per interval
+	private void warnNotFound() {
+		notFoundCount++;
+		long now = System.currentTimeMillis();
+		if (now - lastNotFoundWarning >= NOT_FOUND_WARNING_INTERVAL) {
+			lastNotFoundWarning = now;
+			Log.w(TAG, "Warning: resourceId not found (" + notFoundCount
+					+ " draw calls so far)");
+		}
+	}
+
+	/**
+	 * Returns the number of draw calls made with a resource id or handle that
+	 * SpriteBatcher does not know about. These are skipped.
+	 * 
+	 * @return
+	 */
+	public int getNotFoundCount() {
+		return notFoundCount;
 	}
 }
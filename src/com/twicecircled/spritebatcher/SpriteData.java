@@ -17,29 +17,65 @@
 
 package com.twicecircled.spritebatcher;
 
-import java.util.ArrayList;
+import java.nio.ByteOrder;
+
 import android.graphics.Rect;
-import android.util.Log;
 
 public class SpriteData {
 	// A SpriteData contains all of the information needs to make a single
 	// GLDRAWELEMENTS call. As you cannot draw using two textures in a single
 	// GLDRAWELEMENTS there is a SpriteData for each texture.
 
-	private ArrayList<Float> vertices; // Positions of vertices
-	private ArrayList<Short> indices; // Which verts go together to form Ele's
-	private ArrayList<Float> textureCoords; // Texture map coordinates
+	// Vertices are interleaved as x, y, u, v, colour in an int array. The
+	// positions and texture coords are the raw bits of floats, the colour is
+	// four unsigned bytes (r, g, b, a) so that sprites of any tint share a
+	// single draw call. Keeping ints means no colour can turn into a NaN
+	// float that the VM is free to canonicalise.
+	protected static final int VERTEX_SIZE = 5; // Values per vertex
+	protected static final int STRIDE = VERTEX_SIZE * 4; // Bytes per vertex
+	protected static final int TEXTURE_COORD_OFFSET = 2; // Values
+	protected static final int COLOUR_OFFSET = 4; // Values
+	protected static final int QUAD_SIZE = 4 * VERTEX_SIZE; // Values per quad
+
+	// Primitive arrays are reused from frame to frame, clear() only resets
+	// the counts. They grow geometrically when a frame needs more room.
+	// NB There are no per sprite indices, every quad uses the same pattern
+	// so they are shared through QuadIndices.
+	private int[] vertices; // Interleaved vertex data
+	private int vertexCount;
+
+	// Initial room for this many sprites
+	private static final int INITIAL_SPRITES = 64;
+
+	// Retained geometry (see SpriteLayer) can be kept in a buffer object on
+	// the GPU. Dirty whenever the geometry has changed since upload.
+	private int bufferId;
+	private boolean bufferDirty = true;
 
 	private int textureWidth;
 	private int textureHeight;
-
-	private int argb;
-
-	protected SpriteData(int rgba) {
-		vertices = new ArrayList<Float>();
-		indices = new ArrayList<Short>();
-		textureCoords = new ArrayList<Float>();
-		this.argb = rgba;
+	// Offset added to src coordinates, non zero when drawing a region of an
+	// atlas page
+	private float regionX;
+	private float regionY;
+	// Multiplies src coordinates, less than 1 when the texture was decoded
+	// below full resolution so callers keep using full resolution pixels
+	private float srcScale = 1;
+
+	// Used to skip sprites that are entirely off screen, null for no culling
+	private Viewport viewport;
+	// Scratch space for the transformed corners of the current sprite
+	private float[] cornerX = new float[4];
+	private float[] cornerY = new float[4];
+
+	// Colour of the sprite currently being added
+	private int colour;
+	// Last argb packed, saves repacking for runs of the same colour
+	private int lastARGB = Texture.DEFAULT_ARGB;
+	private int lastColour = packColour(Texture.DEFAULT_ARGB);
+
+	protected SpriteData() {
+		vertices = new int[INITIAL_SPRITES * QUAD_SIZE];
 	}
 
 	protected void setDimensions(int width, int height) {
@@ -47,329 +83,335 @@ public class SpriteData {
 		textureHeight = height;
 	}
 
-	protected int getARGB() {
-		return argb;
+	protected void setRegion(int x, int y) {
+		regionX = x;
+		regionY = y;
 	}
 
-	// Add sprite methods
-	// DIRECT
-	protected void addVertices(float[] f) {
-		for (int i = 0; i < f.length; i++) {
-			vertices.add(f[i]);
-		}
+	protected void setSrcScale(float scale) {
+		srcScale = scale;
 	}
 
-	protected void addIndices(short[] s) {
-		for (int i = 0; i < s.length; i++) {
-			indices.add(s[i]);
-		}
+	protected void setViewport(Viewport viewport) {
+		this.viewport = viewport;
 	}
 
-	protected void addTextureCoords(float[] f) {
-		for (int i = 0; i < f.length; i++) {
-			textureCoords.add(f[i]);
-		}
+	// Add sprite methods
+	// DIRECT
+	protected void addVertices(int[] f) {
+		// f must already be in the interleaved format, four vertices per quad
+		ensureVertexCapacity(f.length);
+		System.arraycopy(f, 0, vertices, vertexCount, f.length);
+		vertexCount += f.length;
 	}
 
-	// SIMPLE
-	protected void addSprite(Rect src, Rect dst) {
-		// This is a simple class for doing straight src->dst draws
+	// NB The Rect methods just unpack their Rects, all the work is done by
+	// the primitive versions so that no objects are needed per sprite.
 
-		// VERTICES
-		vertices.add((float) dst.left);
-		vertices.add((float) dst.top);
-		vertices.add(0f);
-		vertices.add((float) dst.left);
-		vertices.add((float) dst.bottom);
-		vertices.add(0f);
-		vertices.add((float) dst.right);
-		vertices.add((float) dst.bottom);
-		vertices.add(0f);
-		vertices.add((float) dst.right);
-		vertices.add((float) dst.top);
-		vertices.add(0f);
-
-		// INDICES - increment from last value
-		short lastValue;
-		if (!indices.isEmpty()) {
-			// If not empty, find last value
-			lastValue = indices.get(indices.size() - 1);
-		} else
-			lastValue = -1;
-		indices.add((short) (lastValue + 1));
-		indices.add((short) (lastValue + 2));
-		indices.add((short) (lastValue + 3));
-		indices.add((short) (lastValue + 1));
-		indices.add((short) (lastValue + 3));
-		indices.add((short) (lastValue + 4));
+	// SIMPLE
+	protected void addSprite(Rect src, Rect dst, int argb) {
+		addSprite(src.left, src.top, src.right, src.bottom, dst.left, dst.top,
+				dst.right - dst.left, dst.bottom - dst.top, argb);
+	}
 
-		// TEXTURE COORDS
-		float[] srcX = { src.left, src.left, src.right, src.right };
-		float[] srcY = { src.top, src.bottom, src.bottom, src.top };
-		for (int i = 0; i < 4; i++) {
-			textureCoords.add((float) (srcX[i] / textureWidth));
-			textureCoords.add((float) (srcY[i] / textureHeight));
+	protected void addSprite(int srcLeft, int srcTop, int srcRight,
+			int srcBottom, int dstX, int dstY, int w, int h, int argb) {
+		// This is a simple class for doing straight src->dst draws
+		if (!isVisible(dstX, dstY, dstX + w, dstY + h)) {
+			return;
 		}
+		setColour(argb);
+
+		// VERTICES + TEXTURE COORDS
+		cornerX[0] = cornerX[1] = dstX;
+		cornerX[2] = cornerX[3] = dstX + w;
+		cornerY[0] = cornerY[3] = dstY;
+		cornerY[1] = cornerY[2] = dstY + h;
+		addQuad((srcLeft * srcScale + regionX) / textureWidth,
+				(srcTop * srcScale + regionY) / textureHeight,
+				(srcRight * srcScale + regionX) / textureWidth,
+				(srcBottom * srcScale + regionY) / textureHeight);
 	}
 
-	protected void addSprite(Rect src, Rect dst, int angle) {
+	protected void addSprite(Rect src, Rect dst, int angle, int argb) {
+		addSprite(src.left, src.top, src.right, src.bottom, dst.left, dst.top,
+				dst.right - dst.left, dst.bottom - dst.top, angle, argb);
+	}
+
+	protected void addSprite(int srcLeft, int srcTop, int srcRight,
+			int srcBottom, int dstX, int dstY, int w, int h, int angle,
+			int argb) {
 		// This is a simple class for doing straight src->dst draws
 		// It automatically rotates the images by angle about its centre
-
-		// VERTICES
-		// Trig
-		double cos = Math.cos((double) angle / 180 * Math.PI);
-		double sin = Math.sin((double) angle / 180 * Math.PI);
+		setColour(argb);
 
 		// Width and height
-		float halfWidth = (dst.right - dst.left) / 2;
-		float halfHeight = (dst.top - dst.bottom) / 2;
-
-		// Coordinates before rotation
-		float[] hotX = { -halfWidth, -halfWidth, halfWidth, halfWidth };
-		float[] hotY = { halfHeight, -halfHeight, -halfHeight, halfHeight };
-		for (int i = 0; i < 4; i++) {
-			// Coordinates after rotation
-			float transformedX = (float) (cos * hotX[i] - sin * hotY[i]);
-			float transformedY = (float) (sin * hotX[i] + cos * hotY[i]);
-			// Pan by draw coordinates
-			transformedX += dst.left + halfWidth;
-			transformedY += dst.bottom + halfHeight;
-			// Add to vertices array
-			vertices.add(transformedX);
-			vertices.add(transformedY);
-			vertices.add(0f);
-		}
+		float halfWidth = w / 2;
+		float halfHeight = -h / 2;
+		float centreX = dstX + halfWidth;
+		float centreY = dstY + h + halfHeight;
 
-		// INDICES - increment from last value
-		short lastValue;
-		if (!indices.isEmpty()) {
-			// If not empty, find last value
-			lastValue = indices.get(indices.size() - 1);
-		} else
-			lastValue = -1;
-		indices.add((short) (lastValue + 1));
-		indices.add((short) (lastValue + 2));
-		indices.add((short) (lastValue + 3));
-		indices.add((short) (lastValue + 1));
-		indices.add((short) (lastValue + 3));
-		indices.add((short) (lastValue + 4));
+		// VERTICES
+		setCorners(-halfWidth, halfHeight, halfWidth, -halfHeight, angle,
+				centreX, centreY);
+		if (!isCornersVisible()) {
+			return;
+		}
 
 		// TEXTURE COORDS
-		float[] srcX = { src.left, src.left, src.right, src.right };
-		float[] srcY = { src.top, src.bottom, src.bottom, src.top };
-		for (int i = 0; i < 4; i++) {
-			textureCoords.add((float) (srcX[i] / textureWidth));
-			textureCoords.add((float) (srcY[i] / textureHeight));
-		}
+		addQuad((srcLeft * srcScale + regionX) / textureWidth,
+				(srcTop * srcScale + regionY) / textureHeight,
+				(srcRight * srcScale + regionX) / textureWidth,
+				(srcBottom * srcScale + regionY) / textureHeight);
 	}
 
 	// COMPLICATED
 	protected void addSprite(Rect src, int drawX, int drawY, Rect hotRect,
-			int angle, float sizeX, float sizeY) {
+			int angle, float sizeX, float sizeY, int argb) {
+		addSprite(src.left, src.top, src.right, src.bottom, drawX, drawY,
+				hotRect.left, hotRect.top, hotRect.right, hotRect.bottom,
+				angle, sizeX, sizeY, argb);
+	}
+
+	protected void addSprite(int srcLeft, int srcTop, int srcRight,
+			int srcBottom, int drawX, int drawY, int hotLeft, int hotTop,
+			int hotRight, int hotBottom, int angle, float sizeX, float sizeY,
+			int argb) {
 		// This class allows rotations but needs additional input
-		// hotRect defines the corner coordinates from drawX and drawY
+		// hot coordinates define the corners relative to drawX and drawY
 		// drawX and drawY is the draw point and centre of rotation
+		setColour(argb);
 
 		// VERTICES
-		// Trig
-		double cos = Math.cos((double) angle / 180 * Math.PI);
-		double sin = Math.sin((double) angle / 180 * Math.PI);
-
-		// Coordinates before rotation
-		float[] hotX = { hotRect.left, hotRect.left, hotRect.right,
-				hotRect.right };
-		float[] hotY = { hotRect.top, hotRect.bottom, hotRect.bottom,
-				hotRect.top };
-		for (int i = 0; i < 4; i++) {
-			// Apply scale before rotation
-			float x = hotX[i] * sizeX;
-			float y = hotY[i] * sizeY;
-			// Coordinates after rotation
-			float transformedX = (float) (cos * x - sin * y);
-			float transformedY = (float) (sin * x + cos * y);
-			// Pan by draw coordinates
-			transformedX += drawX;
-			transformedY += drawY;
-			// Add to vertices array
-			vertices.add(transformedX);
-			vertices.add(transformedY);
-			vertices.add(0f);
-		}
-
-		// INDICES - increment from last value
-		short lastValue;
-		if (!indices.isEmpty()) {
-			// If not empty, find last value
-			lastValue = indices.get(indices.size() - 1);
-		} else
-			lastValue = -1;
-		indices.add((short) (lastValue + 1));
-		indices.add((short) (lastValue + 2));
-		indices.add((short) (lastValue + 3));
-		indices.add((short) (lastValue + 1));
-		indices.add((short) (lastValue + 3));
-		indices.add((short) (lastValue + 4));
-
-		// TEXTURE COORDS
-		float[] srcX = { src.left + 0.5f, src.left + 0.5f, src.right - 0.5f,
-				src.right - 0.5f };
-		float[] srcY = { src.top + 0.5f, src.bottom - 0.5f, src.bottom - 0.5f,
-				src.top + 0.5f };
-		for (int i = 0; i < 4; i++) {
-			textureCoords.add((float) (srcX[i] / textureWidth));
-			textureCoords.add((float) (srcY[i] / textureHeight));
+		// Coordinates before rotation, with scale applied
+		setCorners(hotLeft * sizeX, hotTop * sizeY, hotRight * sizeX,
+				hotBottom * sizeY, angle, drawX, drawY);
+		if (!isCornersVisible()) {
+			return;
 		}
 
+		// TEXTURE COORDS - inset by half a pixel
+		addQuad((srcLeft * srcScale + regionX + 0.5f) / textureWidth,
+				(srcTop * srcScale + regionY + 0.5f) / textureHeight,
+				(srcRight * srcScale + regionX - 0.5f) / textureWidth,
+				(srcBottom * srcScale + regionY - 0.5f) / textureHeight);
 	}
 
-	protected void drawLine(Rect src, int x1, int y1, int x2, int y2, int width) {
-		// Get angle between p1 and p2
-		double angle = Math.atan2(y2 - y1, x2 - x1);
-		int sinAngleOffset = (int) (Math.sin(angle) * width / 2);
-		int cosAngleOffset = (int) (Math.cos(angle) * width / 2);
+	protected void drawLine(Rect src, int x1, int y1, int x2, int y2,
+			int width, int argb) {
+		drawLine(src.left, src.top, src.right, src.bottom, x1, y1, x2, y2,
+				width, argb);
+	}
 
-		// VERTICES
-		vertices.add((float) (x1 + sinAngleOffset));
-		vertices.add((float) (y1 - cosAngleOffset));
-		vertices.add(0f);
-		vertices.add((float) (x1 - sinAngleOffset));
-		vertices.add((float) (y1 + cosAngleOffset));
-		vertices.add(0f);
-		vertices.add((float) (x2 - sinAngleOffset));
-		vertices.add((float) (y2 + cosAngleOffset));
-		vertices.add(0f);
-		vertices.add((float) (x2 + sinAngleOffset));
-		vertices.add((float) (y2 - cosAngleOffset));
-		vertices.add(0f);
-
-		// INDICES - increment from last value
-		short lastValue;
-		if (!indices.isEmpty()) {
-			// If not empty, find last value
-			lastValue = indices.get(indices.size() - 1);
-		} else
-			lastValue = -1;
-		indices.add((short) (lastValue + 1));
-		indices.add((short) (lastValue + 2));
-		indices.add((short) (lastValue + 3));
-		indices.add((short) (lastValue + 1));
-		indices.add((short) (lastValue + 3));
-		indices.add((short) (lastValue + 4));
+	protected void drawLine(int srcLeft, int srcTop, int srcRight,
+			int srcBottom, int x1, int y1, int x2, int y2, int width, int argb) {
+		setColour(argb);
 
 		// Get length of line
-		int length = (int) Math.sqrt((x2 - x1) * (x2 - x1) + (y2 - y1)
-				* (y2 - y1));
+		float exactLength = (float) Math.sqrt((x2 - x1) * (x2 - x1)
+				+ (y2 - y1) * (y2 - y1));
+		int length = (int) exactLength;
+
+		// Sin and cos of the angle between p1 and p2 come straight from the
+		// direction, no need for atan2
+		float sin = 0;
+		float cos = 1;
+		if (exactLength > 0) {
+			sin = (y2 - y1) / exactLength;
+			cos = (x2 - x1) / exactLength;
+		}
+		int sinAngleOffset = (int) (sin * width / 2);
+		int cosAngleOffset = (int) (cos * width / 2);
 		// Get number of times texture should 'wrap'
-		int textureLength = src.right - src.left;
+		int textureLength = srcRight - srcLeft;
 		int nWrap = length / textureLength;
 
-		// TEXTURE COORDS
-		float[] u = { 0, 0, nWrap, nWrap };
-		float[] srcY = { src.top, src.bottom, src.bottom, src.top };
-		for (int i = 0; i < 4; i++) {
-			textureCoords.add((float) (u[i]));
-			textureCoords.add((float) (srcY[i] / textureHeight));
+		// VERTICES
+		cornerX[0] = x1 + sinAngleOffset;
+		cornerY[0] = y1 - cosAngleOffset;
+		cornerX[1] = x1 - sinAngleOffset;
+		cornerY[1] = y1 + cosAngleOffset;
+		cornerX[2] = x2 - sinAngleOffset;
+		cornerY[2] = y2 + cosAngleOffset;
+		cornerX[3] = x2 + sinAngleOffset;
+		cornerY[3] = y2 - cosAngleOffset;
+		if (!isCornersVisible()) {
+			return;
 		}
+
+		// TEXTURE COORDS
+		addQuad(0, (srcTop * srcScale + regionY) / textureHeight, nWrap,
+				(srcBottom * srcScale + regionY) / textureHeight);
 	}
 
-	public void drawTile(Rect dst, int offsetX, int offsetY, float scale) {
-		// VERTICES
-		vertices.add((float) dst.left);
-		vertices.add((float) dst.top);
-		vertices.add(0f);
-		vertices.add((float) dst.left);
-		vertices.add((float) dst.bottom);
-		vertices.add(0f);
-		vertices.add((float) dst.right);
-		vertices.add((float) dst.bottom);
-		vertices.add(0f);
-		vertices.add((float) dst.right);
-		vertices.add((float) dst.top);
-		vertices.add(0f);
-
-		// INDICES - increment from last value
-		short lastValue;
-		if (!indices.isEmpty()) {
-			// If not empty, find last value
-			lastValue = indices.get(indices.size() - 1);
-		} else
-			lastValue = -1;
-		indices.add((short) (lastValue + 1));
-		indices.add((short) (lastValue + 2));
-		indices.add((short) (lastValue + 3));
-		indices.add((short) (lastValue + 1));
-		indices.add((short) (lastValue + 3));
-		indices.add((short) (lastValue + 4));
+	public void drawTile(Rect dst, int offsetX, int offsetY, float scale,
+			int argb) {
+		drawTile(dst.left, dst.top, dst.right, dst.bottom, offsetX, offsetY,
+				scale, argb);
+	}
+
+	protected void drawTile(int dstLeft, int dstTop, int dstRight,
+			int dstBottom, int offsetX, int offsetY, float scale, int argb) {
+		if (!isVisible(dstLeft, dstTop, dstRight, dstBottom)) {
+			return;
+		}
+		setColour(argb);
 
 		// Get number of times texture should 'wrap'
-		int drawWidth = dst.right - dst.left;
-		int drawHeight = dst.bottom - dst.top;
-		float xWrap = (float) drawWidth / textureWidth / scale;
-		float yWrap = (float) drawHeight / textureHeight / scale;
+		int drawWidth = dstRight - dstLeft;
+		int drawHeight = dstBottom - dstTop;
+		float xWrap = drawWidth * srcScale / textureWidth / scale;
+		float yWrap = drawHeight * srcScale / textureHeight / scale;
 
 		// Offsets
-		float offsetU = (float) offsetX / textureWidth;
-		float offsetV = (float) offsetY / textureHeight;
+		float offsetU = offsetX * srcScale / textureWidth;
+		float offsetV = offsetY * srcScale / textureHeight;
+
+		// VERTICES + TEXTURE COORDS
+		cornerX[0] = cornerX[1] = dstLeft;
+		cornerX[2] = cornerX[3] = dstRight;
+		cornerY[0] = cornerY[3] = dstTop;
+		cornerY[1] = cornerY[2] = dstBottom;
+		addQuad(offsetU, offsetV, xWrap + offsetU, yWrap + offsetV);
+	}
+
+	// Corners are in the order left-top, left-bottom, right-bottom, right-top
+	// relative to the origin, rotated by angle about it
+	private void setCorners(float left, float top, float right,
+			float bottom, int angle, float originX, float originY) {
+		if (angle == 0) {
+			// Nothing to rotate, skip the trig
+			cornerX[0] = cornerX[1] = left + originX;
+			cornerX[2] = cornerX[3] = right + originX;
+			cornerY[0] = cornerY[3] = top + originY;
+			cornerY[1] = cornerY[2] = bottom + originY;
+		} else {
+			// Trig
+			float cos = TrigTable.cos(angle);
+			float sin = TrigTable.sin(angle);
+			// Coordinates after rotation, panned by origin
+			cornerX[0] = cos * left - sin * top + originX;
+			cornerY[0] = sin * left + cos * top + originY;
+			cornerX[1] = cos * left - sin * bottom + originX;
+			cornerY[1] = sin * left + cos * bottom + originY;
+			cornerX[2] = cos * right - sin * bottom + originX;
+			cornerY[2] = sin * right + cos * bottom + originY;
+			cornerX[3] = cos * right - sin * top + originX;
+			cornerY[3] = sin * right + cos * top + originY;
+		}
+	}
 
-		Log.d(SpriteBatcher.TAG, "offsetU = " + offsetU);
+	// Culling, checked before anything is written
+	private boolean isVisible(float x1, float y1, float x2, float y2) {
+		if (viewport == null) {
+			return true;
+		}
+		return viewport.isVisible(Math.min(x1, x2), Math.min(y1, y2),
+				Math.max(x1, x2), Math.max(y1, y2));
+	}
 
-		// TEXTURE COORDS
-		float[] u = { offsetU, offsetU, xWrap + offsetU, xWrap + offsetU };
-		float[] v = { offsetV, yWrap + offsetV, yWrap + offsetV, offsetV };
-		for (int i = 0; i < 4; i++) {
-			textureCoords.add((float) (u[i]));
-			textureCoords.add((float) (v[i]));
+	private boolean isCornersVisible() {
+		if (viewport == null) {
+			return true;
 		}
+		float minX = cornerX[0];
+		float maxX = cornerX[0];
+		float minY = cornerY[0];
+		float maxY = cornerY[0];
+		for (int i = 1; i < 4; i++) {
+			minX = Math.min(minX, cornerX[i]);
+			maxX = Math.max(maxX, cornerX[i]);
+			minY = Math.min(minY, cornerY[i]);
+			maxY = Math.max(maxY, cornerY[i]);
+		}
+		return viewport.isVisible(minX, minY, maxX, maxY);
+	}
 
+	// Write helpers, all geometry goes through these
+	private void setColour(int argb) {
+		if (argb != lastARGB) {
+			lastARGB = argb;
+			lastColour = packColour(argb);
+		}
+		colour = lastColour;
+	}
+
+	// Writes the current corners with texture coords u1,v1 at the left-top
+	// corner and u2,v2 at the right-bottom
+	private void addQuad(float u1, float v1, float u2, float v2) {
+		addVertex(cornerX[0], cornerY[0], u1, v1);
+		addVertex(cornerX[1], cornerY[1], u1, v2);
+		addVertex(cornerX[2], cornerY[2], u2, v2);
+		addVertex(cornerX[3], cornerY[3], u2, v1);
+	}
+
+	private void addVertex(float x, float y, float u, float v) {
+		ensureVertexCapacity(VERTEX_SIZE);
+		vertices[vertexCount++] = Float.floatToRawIntBits(x);
+		vertices[vertexCount++] = Float.floatToRawIntBits(y);
+		vertices[vertexCount++] = Float.floatToRawIntBits(u);
+		vertices[vertexCount++] = Float.floatToRawIntBits(v);
+		vertices[vertexCount++] = colour;
+	}
+
+	private void ensureVertexCapacity(int extra) {
+		if (vertexCount + extra > vertices.length) {
+			// Double in size so growth is amortised over many frames
+			int[] grown = new int[Math.max(vertices.length * 2,
+					vertexCount + extra)];
+			System.arraycopy(vertices, 0, grown, 0, vertexCount);
+			vertices = grown;
+		}
+	}
+
+	protected static int packColour(int argb) {
+		// GL reads the colour as bytes r, g, b, a in memory order, so the int
+		// bits depend on the native byte order
+		int a = (argb >>> 24) & 0xff;
+		int r = (argb >>> 16) & 0xff;
+		int g = (argb >>> 8) & 0xff;
+		int b = argb & 0xff;
+		if (ByteOrder.nativeOrder() == ByteOrder.LITTLE_ENDIAN) {
+			return (a << 24) | (b << 16) | (g << 8) | r;
+		}
+		return (r << 24) | (g << 16) | (b << 8) | a;
 	}
 
 	protected void clear() {
-		vertices.clear();
-		indices.clear();
-		textureCoords.clear();
+		// Keep the arrays, they are reused next frame
+		vertexCount = 0;
+		bufferDirty = true;
 	}
 
 	// GETTER/SETTER
-	protected float[] getVertices() {
-		// Convert to float[] before returning
-		return convertToPrimitive(vertices.toArray(new Float[vertices.size()]));
+	// NB These return the live backing arrays, only the first getXCount()
+	// values are valid.
+	protected int[] getVertices() {
+		return vertices;
 	}
 
-	protected short[] getIndices() {
-		// Convert to short[] before returning
-		return convertToPrimitive(indices.toArray(new Short[indices.size()]));
+	protected int getVertexCount() {
+		return vertexCount;
 	}
 
-	protected float[] getTextureCoords() {
-		// Convert to float[] before returning
-		return convertToPrimitive(textureCoords.toArray(new Float[textureCoords
-				.size()]));
+	protected int getBufferId() {
+		return bufferId;
 	}
 
-	private float[] convertToPrimitive(Float[] objectArray) {
-		if (objectArray == null) {
-			return null;
-		} else if (objectArray.length == 0) {
-			return null;
-		}
-		final float[] primitiveArray = new float[objectArray.length];
-		for (int i = 0; i < objectArray.length; i++) {
-			primitiveArray[i] = objectArray[i].floatValue();
-		}
-		return primitiveArray;
+	protected void setBufferId(int bufferId) {
+		this.bufferId = bufferId;
+		bufferDirty = true;
 	}
 
-	private short[] convertToPrimitive(Short[] objectArray) {
-		if (objectArray == null) {
-			return null;
-		} else if (objectArray.length == 0) {
-			return null;
-		}
-		final short[] primitiveArray = new short[objectArray.length];
-		for (int i = 0; i < objectArray.length; i++) {
-			primitiveArray[i] = objectArray[i].shortValue();
-		}
-		return primitiveArray;
+	protected boolean isBufferDirty() {
+		return bufferDirty;
+	}
+
+	protected void setBufferClean() {
+		bufferDirty = false;
+	}
+
+	protected int getQuadCount() {
+		return vertexCount / QUAD_SIZE;
 	}
 }
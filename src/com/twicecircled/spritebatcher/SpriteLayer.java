@@ -0,0 +1,109 @@
+/* Sprite Batcher V1.31
+   Copyright (c) 2013 Tim Wicksteed <tim@twicecircled.com>
+   http:/www.twicecircled.com
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+
+package com.twicecircled.spritebatcher;
+
+import java.util.HashMap;
+import java.util.Iterator;
+
+import javax.microedition.khronos.opengles.GL10;
+
+public class SpriteLayer {
+	// A SpriteLayer keeps the geometry recorded into it between frames, so
+	// sprites that never change (backgrounds, HUD frames, level decoration)
+	// are only calculated once and then replayed each frame with one draw
+	// call per texture. Create one with SpriteBatcher.createLayer().
+
+	// One SpriteData per texture drawn into this layer
+	private HashMap<Texture, SpriteData> spriteDatas = new HashMap<Texture, SpriteData>();
+	private boolean built;
+	// False if a texture recorded into the layer was not loaded yet, its
+	// texture coords would be worked out against a 0x0 texture
+	private boolean complete = true;
+
+	protected SpriteLayer() {
+	}
+
+	/**
+	 * Returns true if geometry has been recorded into this layer and it has
+	 * not been invalidated since.
+	 * 
+	 * @return
+	 */
+	public boolean isBuilt() {
+		return built;
+	}
+
+	/**
+	 * Throw away the recorded geometry. Record the layer again with
+	 * SpriteBatcher.beginLayer()/endLayer() before it is next drawn.
+	 */
+	public void invalidate() {
+		for (Iterator<SpriteData> i = spriteDatas.values().iterator(); i
+				.hasNext();) {
+			i.next().clear();
+		}
+		built = false;
+		complete = true;
+	}
+
+	// Layers recorded while a texture was still loading stay unbuilt, so
+	// they are recorded again
+	protected void setBuilt() {
+		built = complete;
+	}
+
+	// Get SpriteData to record into, created the first time a texture is
+	// drawn into this layer
+	protected SpriteData getSpriteData(Texture texture) {
+		SpriteData spriteData = spriteDatas.get(texture);
+		if (spriteData == null) {
+			spriteData = new SpriteData();
+			spriteDatas.put(texture, spriteData);
+		}
+		if (!texture.isReady()) {
+			complete = false;
+		}
+		// Dimensions are only known once the texture is loaded
+		spriteData.setDimensions(texture.width, texture.height);
+		return spriteData;
+	}
+
+	// Get SpriteData to replay, null if nothing was drawn with this texture
+	protected SpriteData findSpriteData(Texture texture) {
+		return spriteDatas.get(texture);
+	}
+
+	// Layer is no longer wanted, free its geometry and any buffer objects
+	// holding it. Must be called on the GL thread.
+	protected void release(GL10 gl, QuadRenderer renderer) {
+		for (Iterator<SpriteData> i = spriteDatas.values().iterator(); i
+				.hasNext();) {
+			renderer.releaseRetained(gl, i.next());
+		}
+		spriteDatas.clear();
+		built = false;
+	}
+
+	// GL context was lost, any buffer objects holding geometry are gone
+	protected void onSurfaceLost() {
+		for (Iterator<SpriteData> i = spriteDatas.values().iterator(); i
+				.hasNext();) {
+			i.next().setBufferId(0);
+		}
+	}
+}
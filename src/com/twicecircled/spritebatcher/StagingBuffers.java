@@ -0,0 +1,92 @@
+/* Sprite Batcher V1.31
+   Copyright (c) 2013 Tim Wicksteed <tim@twicecircled.com>
+   http:/www.twicecircled.com
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+
+package com.twicecircled.spritebatcher;
+
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+
+class StagingBuffers {
+	// Long lived direct vertex buffer that every SpriteData is copied into
+	// before being handed to OpenGL. There is no index buffer here, indices
+	// are shared by every quad, see QuadIndices. Direct allocations are
+	// expensive and only freed lazily, so the buffer is only reallocated when
+	// a batch needs more room than it currently has.
+
+	// Default capacity policy
+	protected static final int DEFAULT_INITIAL_SPRITES = 256;
+	protected static final float DEFAULT_GROWTH_FACTOR = 2f;
+
+	private int initialSprites = DEFAULT_INITIAL_SPRITES;
+	private float growthFactor = DEFAULT_GROWTH_FACTOR;
+
+	private IntBuffer vertexBuffer;
+
+	// Number of times a buffer has had to be reallocated
+	private int reallocations;
+
+	protected void setCapacityPolicy(int initialSprites, float growthFactor) {
+		if (initialSprites < 1) {
+			throw new IllegalArgumentException(
+					"initialSprites must be at least 1");
+		}
+		if (growthFactor <= 1f) {
+			throw new IllegalArgumentException(
+					"growthFactor must be greater than 1");
+		}
+		this.initialSprites = initialSprites;
+		this.growthFactor = growthFactor;
+		// Drop current buffers so the new policy takes effect on next use
+		vertexBuffer = null;
+	}
+
+	protected IntBuffer vertices(int[] vertices, int offset, int count) {
+		if (vertexBuffer == null || vertexBuffer.capacity() < count) {
+			vertexBuffer = allocate(vertexBuffer, count,
+					SpriteData.QUAD_SIZE, 4).asIntBuffer();
+		}
+		vertexBuffer.clear();
+		vertexBuffer.put(vertices, offset, count);
+		vertexBuffer.position(0);
+		return vertexBuffer;
+	}
+
+	protected int getReallocations() {
+		return reallocations;
+	}
+
+	private ByteBuffer allocate(Buffer current, int required,
+			int valuesPerSprite, int bytesPerValue) {
+		// Start at the initial capacity, then grow by growthFactor until the
+		// required number of values fits
+		int capacity;
+		if (current == null) {
+			capacity = initialSprites * valuesPerSprite;
+		} else {
+			capacity = current.capacity();
+			reallocations++;
+		}
+		while (capacity < required) {
+			capacity = (int) Math.ceil(capacity * growthFactor);
+		}
+		ByteBuffer bb = ByteBuffer.allocateDirect(capacity * bytesPerValue);
+		bb.order(ByteOrder.nativeOrder());
+		return bb;
+	}
+}
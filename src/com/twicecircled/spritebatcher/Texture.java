@@ -17,28 +17,127 @@
 
 package com.twicecircled.spritebatcher;
 
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import javax.microedition.khronos.opengles.GL10;
+
 import android.content.Context;
 import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
 import android.graphics.Rect;
-import android.util.SparseArray;
 
 public abstract class Texture {
 	// Abstract texture class, holds everything needed to draw this texture's
 	// batch of sprites
 
 	// Shared fields
-	protected SparseArray<SpriteData> spriteDatas = new SparseArray<SpriteData>();
+	// Colour is stored per vertex so a single SpriteData holds every sprite
+	// drawn with this texture, whatever its tint
+	protected SpriteData spriteData = new SpriteData();
+	// While a SpriteLayer is being recorded draws go into it instead
+	protected SpriteLayer recordingLayer;
+	// When packed into an atlas, sprites go into the page's batch with
+	// src coordinates offset to this texture's region
+	protected Texture atlasPage;
+	protected int atlasX;
+	protected int atlasY;
+	protected boolean atlasExcluded;
 	protected int textureId;
+	// Whether the bitmap is in OpenGL yet, sprites are only drawn once it is
+	protected int state = UNLOADED;
+	// Estimated size in OpenGL and when it was last drawn, see
+	// TextureResidency
+	protected int residentBytes;
+	protected int lastDrawnFrame;
+	// Failed loads in a row and the frame before which it is not tried again
+	protected int loadFailures;
+	protected int retryFrame;
+	// Number of TextureGroups this texture is in, and how many are active
+	protected int groupCount;
+	protected int activeGroupCount;
 	protected int bitmapId;
+	// Pixel format to decode and upload in, see
+	// SpriteBatcher.setTextureFormat()
+	protected TextureFormat format = TextureFormat.ARGB_8888;
+	protected boolean dither;
+	// Whether to build a mip chain when uploading, see
+	// SpriteBatcher.setMipmaps()
+	protected boolean mipmaps;
+	// Decoded at 1/sampleSize of full resolution, see
+	// SpriteBatcher.setQualityTier()
+	protected int sampleSize = 1;
+	// Where decoded pixels are kept between contexts, null if not cached
+	protected TextureCache cache;
+	// Bitmaps to reuse while loading, null if not pooling
+	protected BitmapPool pool;
+	// Id passed into SpriteBatcher's constructor, 0 for atlas pages
+	protected int resourceId;
 	protected int width;
 	protected int height;
 
 	protected final static int DEFAULT_ARGB = 0xffffffff;
 
+	// Load states
+	protected final static int UNLOADED = 0;
+	protected final static int LOADING = 1;
+	protected final static int READY = 2;
+
 	// SHARED METHODS:
 	// Return SpriteData class
-	protected SparseArray<SpriteData> getSpriteData() {
-		return spriteDatas;
+	protected SpriteData getSpriteData() {
+		return spriteData;
+	}
+
+	// Return SpriteData that draws should currently be added to
+	protected SpriteData getTarget() {
+		Texture batchTexture = getBatchTexture();
+		SpriteData target;
+		if (recordingLayer != null) {
+			target = recordingLayer.getSpriteData(batchTexture);
+		} else {
+			target = batchTexture.spriteData;
+		}
+		target.setRegion(atlasX, atlasY);
+		target.setSrcScale(1f / sampleSize);
+		return target;
+	}
+
+	// Return the texture whose batch this texture's sprites are drawn in
+	protected Texture getBatchTexture() {
+		if (atlasPage != null) {
+			return atlasPage;
+		}
+		return this;
+	}
+
+	protected void setAtlas(Texture page, int x, int y) {
+		atlasPage = page;
+		atlasX = x;
+		atlasY = y;
+	}
+
+	// Whether this texture's bitmap can be packed into an atlas page.
+	// Textures that generate their own layout, like fonts, cannot.
+	protected boolean isAtlasCandidate() {
+		return false;
+	}
+
+	// Whether the bitmap can be decoded below full resolution. Textures
+	// that generate their own layout or upload themselves cannot.
+	protected boolean canDownsample() {
+		return false;
+	}
+
+	// Only the per frame SpriteData is culled, layers keep everything
+	protected void setViewport(Viewport viewport) {
+		spriteData.setViewport(viewport);
+	}
+
+	protected void setRecordingLayer(SpriteLayer layer) {
+		recordingLayer = layer;
 	}
 
 	// Return unique texture id associated with this texture
@@ -51,65 +150,221 @@ public abstract class Texture {
 		textureId = id;
 	}
 
+	protected boolean isReady() {
+		return state == READY;
+	}
+
+	// Delete from OpenGL, e.g. to save memory. Loaded again with
+	// SpriteBatcher's usual upload.
+	protected void deleteTexture(GL10 gl) {
+		if (textureId != 0) {
+			gl.glDeleteTextures(1, new int[] { textureId }, 0);
+			setTextureId(0);
+		}
+		state = UNLOADED;
+	}
+
+	// Textures that do not fit a single bitmap, like compressed data or
+	// tiled images, can fill the bound texture themselves instead of going
+	// through getBitmap(). They must set their own dimensions and
+	// residentBytes. Returns false to use getBitmap() after all, e.g. if the
+	// device does not support the format.
+	protected boolean uploadDirect(GL10 gl, Context context) {
+		return false;
+	}
+
+	// Texture whose alpha is used in place of this one's, drawn on the second
+	// texture unit, or 0 for none
+	protected int getAlphaTextureId() {
+		return 0;
+	}
+
+	// Textures in groups are only loaded and drawn while one of their
+	// groups is active
+	protected boolean isWanted() {
+		return groupCount == 0 || activeGroupCount > 0;
+	}
+
+	// Whether the texture may be deleted to save memory and loaded again
+	// when next drawn
+	protected boolean isEvictable() {
+		return true;
+	}
+
+	// Whether getBitmap() may be called from a worker thread, see
+	// TextureLoader
+	protected boolean canDecodeInBackground() {
+		return true;
+	}
+
 	// Passes dimensional data over to spritedata
 	protected void setDimensions(int width, int height) {
 		this.width = width;
 		this.height = height;
+		spriteData.setDimensions(width, height);
 	}
 
 	protected void addSprite(Rect src, Rect dst) {
 		// No rgba value defined so use default
-		getDefaultSpriteData().addSprite(src, dst);
+		getTarget().addSprite(src, dst, DEFAULT_ARGB);
 	}
 
 	protected void addSprite(Rect src, Rect dst, int angle) {
-		getDefaultSpriteData().addSprite(src, dst, angle);
+		getTarget().addSprite(src, dst, angle, DEFAULT_ARGB);
 	}
 
 	protected void addSprite(Rect src, Rect dst, int angle, int argb) {
-		getARGBSpriteData(argb).addSprite(src, dst, angle);
+		getTarget().addSprite(src, dst, angle, argb);
 	}
 
 	protected void addSprite(Rect src, int drawX, int drawY, Rect hotRect,
 			int angle, float sizeX, float sizeY) {
-		getDefaultSpriteData().addSprite(src, drawX, drawY, hotRect, angle,
-				sizeX, sizeY);
+		getTarget().addSprite(src, drawX, drawY, hotRect, angle, sizeX, sizeY,
+				DEFAULT_ARGB);
 	}
 
 	protected void addSprite(Rect src, int drawX, int drawY, Rect hotRect,
 			int angle, float sizeX, float sizeY, int argb) {
-		getARGBSpriteData(argb).addSprite(src, drawX, drawY, hotRect, angle,
-				sizeX, sizeY);
+		getTarget().addSprite(src, drawX, drawY, hotRect, angle, sizeX, sizeY,
+				argb);
+	}
+
+	// Primitive versions, no Rects needed
+	protected void addSprite(int srcLeft, int srcTop, int srcRight,
+			int srcBottom, int dstX, int dstY, int w, int h) {
+		getTarget().addSprite(srcLeft, srcTop, srcRight, srcBottom, dstX, dstY,
+				w, h, DEFAULT_ARGB);
+	}
+
+	protected void addSprite(int srcLeft, int srcTop, int srcRight,
+			int srcBottom, int dstX, int dstY, int w, int h, int angle,
+			int argb) {
+		getTarget().addSprite(srcLeft, srcTop, srcRight, srcBottom, dstX, dstY,
+				w, h, angle, argb);
+	}
+
+	protected void addSprite(int srcLeft, int srcTop, int srcRight,
+			int srcBottom, int drawX, int drawY, int hotLeft, int hotTop,
+			int hotRight, int hotBottom, int angle, float sizeX, float sizeY,
+			int argb) {
+		getTarget().addSprite(srcLeft, srcTop, srcRight, srcBottom, drawX,
+				drawY, hotLeft, hotTop, hotRight, hotBottom, angle, sizeX,
+				sizeY, argb);
+	}
+
+	protected void drawLine(int srcLeft, int srcTop, int srcRight,
+			int srcBottom, int x1, int y1, int x2, int y2, int width) {
+		getTarget().drawLine(srcLeft, srcTop, srcRight, srcBottom, x1, y1, x2,
+				y2, width, DEFAULT_ARGB);
+	}
+
+	protected void drawTile(int dstLeft, int dstTop, int dstRight,
+			int dstBottom, int offsetX, int offsetY, float scale) {
+		getTarget().drawTile(dstLeft, dstTop, dstRight, dstBottom, offsetX,
+				offsetY, scale, DEFAULT_ARGB);
 	}
 
 	protected void drawLine(Rect src, int x1, int y1, int x2, int y2, int width) {
-		getDefaultSpriteData().drawLine(src, x1, y1, x2, y2, width);
+		getTarget().drawLine(src, x1, y1, x2, y2, width, DEFAULT_ARGB);
 	}
 
 	protected void drawTile(Rect dst, int offsetX, int offsetY, float scale) {
-		getDefaultSpriteData().drawTile(dst, offsetX, offsetY, scale);
+		getTarget().drawTile(dst, offsetX, offsetY, scale, DEFAULT_ARGB);
 	}
 
-	protected SpriteData getDefaultSpriteData() {
-		SpriteData spriteData = spriteDatas.get(DEFAULT_ARGB);
-		if (spriteData == null) {
-			// Create it
-			spriteData = new SpriteData(DEFAULT_ARGB);
-			spriteDatas.put(DEFAULT_ARGB, spriteData);
-			spriteData.setDimensions(width, height);
+	// Decode the bitmap in this texture's format, from the cache if it is
+	// there
+	protected Bitmap loadBitmap(Context context) {
+		if (cache != null) {
+			Bitmap cached = cache.read(this);
+			if (cached != null) {
+				return cached;
+			}
 		}
-		return spriteData;
+		Bitmap bitmap = format.convert(getBitmap(context), dither);
+		if (cache != null && bitmap != null) {
+			cache.write(this, bitmap);
+		}
+		return bitmap;
+	}
+
+	// Identifies this texture's pixels in the TextureCache, or null if it is
+	// not cached. Must change whenever getBitmap() would return something
+	// different (format and dither are added by the cache).
+	protected String getCacheKey() {
+		return null;
+	}
+
+	// Anything besides the pixels that getBitmap() works out and that has to
+	// be put back when the pixels come from the cache, e.g. glyph metrics
+	protected void writeCacheExtras(DataOutputStream out) throws IOException {
 	}
 
-	protected SpriteData getARGBSpriteData(int argb) {
-		SpriteData spriteData = spriteDatas.get(argb);
-		if (spriteData == null) {
-			// Create it
-			spriteData = new SpriteData(argb);
-			spriteDatas.put(argb, spriteData);
-			spriteData.setDimensions(width, height);
+	protected void readCacheExtras(DataInputStream in) throws IOException {
+	}
+
+	// Decode with getDecodeOptions() into a pooled bitmap of the right size
+	// if there is one, see decode()
+	protected Bitmap decodePooled(Context context) {
+		BitmapFactory.Options options = getDecodeOptions();
+		if (pool != null) {
+			options.inJustDecodeBounds = true;
+			decode(context, options);
+			options.inJustDecodeBounds = false;
+			pool.reuse(options);
 		}
-		return spriteData;
+		try {
+			return decode(context, options);
+		} catch (IllegalArgumentException e) {
+			if (options.inBitmap == null) {
+				throw e;
+			}
+			// Pooled bitmap did not fit after all, e.g. density scaling
+			// changed the size
+			Bitmap unused = options.inBitmap;
+			options.inBitmap = null;
+			pool.put(unused);
+			return decode(context, options);
+		}
+	}
+
+	// Decode the image with these options, for decodePooled(). Called twice,
+	// the first time only for the bounds.
+	protected Bitmap decode(Context context, BitmapFactory.Options options) {
+		return null;
+	}
+
+	// New bitmap, from the pool if there is one. Contents are undefined.
+	protected Bitmap createBitmap(int width, int height, Bitmap.Config config) {
+		if (pool != null) {
+			return pool.create(width, height, config);
+		}
+		return Bitmap.createBitmap(width, height, config);
+	}
+
+	// Done with a bitmap, pool it for reuse or recycle it
+	protected void releaseBitmap(Bitmap bitmap) {
+		if (pool != null) {
+			pool.put(bitmap);
+		} else {
+			bitmap.recycle();
+		}
+	}
+
+	// Stream of the encoded image, for reading it other than through
+	// getBitmap(), e.g. a region at a time. Null if not supported.
+	protected InputStream openStream(Context context) {
+		return null;
+	}
+
+	// Options for subclasses decoding with BitmapFactory, so the bitmap
+	// comes out in the right format without converting where possible
+	protected BitmapFactory.Options getDecodeOptions() {
+		BitmapFactory.Options options = new BitmapFactory.Options();
+		options.inPreferredConfig = format.config;
+		options.inDither = dither;
+		options.inSampleSize = sampleSize;
+		return options;
 	}
 
 	// REQUIRED METHODS
@@ -0,0 +1,289 @@
+/* Sprite Batcher V1.31
+   Copyright (c) 2013 Tim Wicksteed <tim@twicecircled.com>
+   http:/www.twicecircled.com
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+
+package com.twicecircled.spritebatcher;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+
+import android.graphics.Bitmap;
+import android.util.Log;
+
+class TextureCache {
+	// Keeps the final, ready to upload pixels of each texture on disk so
+	// they can be put back after the GL context is lost without decoding
+	// PNGs or rendering glyphs again, see SpriteBatcher.setTextureCache().
+	// One file per texture:
+	// magic, format version, app version (ints)
+	// key length and UTF-8 bytes
+	// width, height, Bitmap.Config name length and bytes
+	// extras length and bytes (see Texture.writeCacheExtras)
+	// pixel data length and raw pixels, as Bitmap.copyPixelsToBuffer
+	// Reading memory maps the file and copies the pixels straight into a new
+	// bitmap.
+
+	private static final int MAGIC = 0x53425443; // SBTC
+	// Bump when the file layout changes
+	private static final int FORMAT_VERSION = 2;
+	private static final String SUFFIX = ".tex";
+	private static final String CHARSET = "UTF-8";
+
+	private File directory;
+	private long maxBytes;
+	private int appVersion;
+
+	private int hits;
+	private int misses;
+
+	protected TextureCache(File directory, long maxBytes, int appVersion) {
+		this.directory = directory;
+		this.maxBytes = maxBytes;
+		this.appVersion = appVersion;
+		directory.mkdirs();
+	}
+
+	// Cached bitmap for texture, or null on a miss. Extras are only handed
+	// to the texture if the pixels were read too.
+	protected Bitmap read(Texture texture) {
+		String key = getKey(texture);
+		if (key == null) {
+			return null;
+		}
+		File file = getFile(key);
+		if (!file.exists()) {
+			countMiss();
+			return null;
+		}
+		RandomAccessFile input = null;
+		try {
+			input = new RandomAccessFile(file, "r");
+			MappedByteBuffer buffer = input.getChannel().map(
+					FileChannel.MapMode.READ_ONLY, 0, input.length());
+			if (buffer.getInt() != MAGIC || buffer.getInt() != FORMAT_VERSION
+					|| buffer.getInt() != appVersion) {
+				// Old version
+				input.close();
+				input = null;
+				file.delete();
+				countMiss();
+				return null;
+			}
+			if (!key.equals(readString(buffer))) {
+				// Another key with the same digest, leave its entry alone
+				countMiss();
+				return null;
+			}
+			int width = buffer.getInt();
+			int height = buffer.getInt();
+			Bitmap.Config config = Bitmap.Config.valueOf(readString(buffer));
+			byte[] extras = new byte[buffer.getInt()];
+			buffer.get(extras);
+			int pixelBytes = buffer.getInt();
+			if (pixelBytes != buffer.remaining()) {
+				throw new IOException("Truncated cache file");
+			}
+			Bitmap bitmap = texture.createBitmap(width, height, config);
+			bitmap.copyPixelsFromBuffer(buffer);
+			texture.readCacheExtras(new DataInputStream(
+					new ByteArrayInputStream(extras)));
+			// Keep recently used files when trimming
+			file.setLastModified(System.currentTimeMillis());
+			countHit();
+			return bitmap;
+		} catch (IOException e) {
+			Log.w(SpriteBatcher.TAG, "Warning: could not read texture cache "
+					+ file, e);
+		} catch (RuntimeException e) {
+			// Corrupt file, e.g. bad config name or buffer underflow
+			Log.w(SpriteBatcher.TAG, "Warning: could not read texture cache "
+					+ file, e);
+		} finally {
+			close(input);
+		}
+		file.delete();
+		countMiss();
+		return null;
+	}
+
+	protected void write(Texture texture, Bitmap bitmap) {
+		String key = getKey(texture);
+		if (key == null) {
+			return;
+		}
+		File file = getFile(key);
+		// Written under another name first so a reader never sees half a
+		// file
+		File temp = new File(directory, file.getName() + "."
+				+ Thread.currentThread().getId());
+		FileOutputStream output = null;
+		try {
+			ByteArrayOutputStream header = new ByteArrayOutputStream();
+			DataOutputStream data = new DataOutputStream(header);
+			data.writeInt(MAGIC);
+			data.writeInt(FORMAT_VERSION);
+			data.writeInt(appVersion);
+			writeString(data, key);
+			data.writeInt(bitmap.getWidth());
+			data.writeInt(bitmap.getHeight());
+			writeString(data, bitmap.getConfig().name());
+			ByteArrayOutputStream extras = new ByteArrayOutputStream();
+			texture.writeCacheExtras(new DataOutputStream(extras));
+			data.writeInt(extras.size());
+			extras.writeTo(data);
+			int pixelBytes = bitmap.getRowBytes() * bitmap.getHeight();
+			data.writeInt(pixelBytes);
+			data.flush();
+
+			ByteBuffer pixels = ByteBuffer.allocate(pixelBytes);
+			bitmap.copyPixelsToBuffer(pixels);
+			output = new FileOutputStream(temp);
+			header.writeTo(output);
+			output.write(pixels.array(), 0, pixelBytes);
+			output.close();
+			output = null;
+			if (!temp.renameTo(file)) {
+				throw new IOException("Could not rename " + temp);
+			}
+		} catch (IOException e) {
+			Log.w(SpriteBatcher.TAG, "Warning: could not write texture cache "
+					+ file, e);
+			temp.delete();
+			return;
+		} finally {
+			close(output);
+		}
+		trim();
+	}
+
+	protected synchronized int getHits() {
+		return hits;
+	}
+
+	protected synchronized int getMisses() {
+		return misses;
+	}
+
+	private synchronized void countHit() {
+		hits++;
+	}
+
+	private synchronized void countMiss() {
+		misses++;
+	}
+
+	// Delete the least recently used files until the rest fit in maxBytes
+	private synchronized void trim() {
+		File[] files = directory.listFiles();
+		if (files == null) {
+			return;
+		}
+		long total = 0;
+		for (int i = 0; i < files.length; i++) {
+			total += files[i].length();
+		}
+		if (total <= maxBytes) {
+			return;
+		}
+		final long[] modified = new long[files.length];
+		Integer[] order = new Integer[files.length];
+		for (int i = 0; i < files.length; i++) {
+			modified[i] = files[i].lastModified();
+			order[i] = i;
+		}
+		Arrays.sort(order, new Comparator<Integer>() {
+			@Override
+			public int compare(Integer a, Integer b) {
+				return modified[a] < modified[b] ? -1
+						: modified[a] > modified[b] ? 1 : 0;
+			}
+		});
+		for (int i = 0; i < order.length && total > maxBytes; i++) {
+			File file = files[order[i]];
+			long length = file.length();
+			if (file.delete()) {
+				total -= length;
+			}
+		}
+	}
+
+	// Everything the pixels depend on
+	private String getKey(Texture texture) {
+		String key = texture.getCacheKey();
+		if (key == null) {
+			return null;
+		}
+		return key + "|" + texture.format + "|" + texture.dither;
+	}
+
+	// Named after a digest of the whole key, so different keys do not keep
+	// replacing each other's file
+	private File getFile(String key) {
+		String name;
+		try {
+			byte[] digest = MessageDigest.getInstance("SHA-1").digest(
+					key.getBytes(CHARSET));
+			StringBuilder hex = new StringBuilder(digest.length * 2);
+			for (int i = 0; i < digest.length; i++) {
+				hex.append(Character.forDigit((digest[i] >> 4) & 0xf, 16));
+				hex.append(Character.forDigit(digest[i] & 0xf, 16));
+			}
+			name = hex.toString();
+		} catch (NoSuchAlgorithmException e) {
+			name = Integer.toHexString(key.hashCode());
+		} catch (UnsupportedEncodingException e) {
+			name = Integer.toHexString(key.hashCode());
+		}
+		return new File(directory, name + SUFFIX);
+	}
+
+	private static void writeString(DataOutputStream data, String value)
+			throws IOException {
+		byte[] bytes = value.getBytes(CHARSET);
+		data.writeInt(bytes.length);
+		data.write(bytes);
+	}
+
+	private static String readString(ByteBuffer buffer) throws IOException {
+		byte[] bytes = new byte[buffer.getInt()];
+		buffer.get(bytes);
+		return new String(bytes, CHARSET);
+	}
+
+	private static void close(Closeable closeable) {
+		if (closeable != null) {
+			try {
+				closeable.close();
+			} catch (IOException e) {
+			}
+		}
+	}
+}
@@ -0,0 +1,81 @@
+/* Sprite Batcher V1.31
+   Copyright (c) 2013 Tim Wicksteed <tim@twicecircled.com>
+   http:/www.twicecircled.com
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+
+package com.twicecircled.spritebatcher;
+
+import javax.microedition.khronos.opengles.GL10;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+
+/**
+ * Pixel format a texture is decoded and uploaded in, see
+ * SpriteBatcher.setTextureFormat().
+ */
+public enum TextureFormat {
+	/**
+	 * 32 bits per pixel, full quality. The default.
+	 */
+	ARGB_8888(Bitmap.Config.ARGB_8888, GL10.GL_RGBA, GL10.GL_UNSIGNED_BYTE, 4),
+	/**
+	 * 16 bits per pixel, no alpha. Good for opaque backgrounds.
+	 */
+	RGB_565(Bitmap.Config.RGB_565, GL10.GL_RGB, GL10.GL_UNSIGNED_SHORT_5_6_5,
+			2),
+	/**
+	 * 16 bits per pixel, 4 bits per channel. Good for sprites without smooth
+	 * gradients.
+	 */
+	ARGB_4444(Bitmap.Config.ARGB_4444, GL10.GL_RGBA,
+			GL10.GL_UNSIGNED_SHORT_4_4_4_4, 2),
+	/**
+	 * 8 bits per pixel, alpha only. Colour comes from the argb passed to the
+	 * draw methods, so good for masks and shapes tinted at draw time.
+	 */
+	ALPHA_8(Bitmap.Config.ALPHA_8, GL10.GL_ALPHA, GL10.GL_UNSIGNED_BYTE, 1);
+
+	protected final Bitmap.Config config;
+	protected final int glFormat;
+	protected final int glType;
+	protected final int bytesPerPixel;
+
+	private TextureFormat(Bitmap.Config config, int glFormat, int glType,
+			int bytesPerPixel) {
+		this.config = config;
+		this.glFormat = glFormat;
+		this.glType = glType;
+		this.bytesPerPixel = bytesPerPixel;
+	}
+
+	// BitmapFactory does not always honour inPreferredConfig (e.g. ARGB_4444
+	// on newer versions, ALPHA_8 for most images), so anything that came
+	// out differently is drawn into a new bitmap of the right config. The
+	// original is recycled.
+	protected Bitmap convert(Bitmap bitmap, boolean dither) {
+		if (bitmap == null || bitmap.getConfig() == config) {
+			return bitmap;
+		}
+		Bitmap converted = Bitmap.createBitmap(bitmap.getWidth(),
+				bitmap.getHeight(), config);
+		Paint paint = new Paint();
+		paint.setDither(dither);
+		new Canvas(converted).drawBitmap(bitmap, 0, 0, paint);
+		bitmap.recycle();
+		return converted;
+	}
+}
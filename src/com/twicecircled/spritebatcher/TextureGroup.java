@@ -0,0 +1,47 @@
+/* Sprite Batcher V1.31
+   Copyright (c) 2013 Tim Wicksteed <tim@twicecircled.com>
+   http:/www.twicecircled.com
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+
+package com.twicecircled.spritebatcher;
+
+import java.util.ArrayList;
+
+class TextureGroup {
+	// Named set of textures loaded and released together, see
+	// SpriteBatcher.defineTextureGroup(). Textures in groups are only loaded
+	// and drawn while at least one of their groups is active.
+
+	protected ArrayList<Texture> textures = new ArrayList<Texture>();
+	protected boolean active;
+	// Decoding in the background ahead of activation
+	protected boolean prefetched;
+
+	protected void add(Texture texture) {
+		if (!textures.contains(texture)) {
+			textures.add(texture);
+			texture.groupCount++;
+		}
+	}
+
+	protected boolean isReady() {
+		for (int i = 0; i < textures.size(); i++) {
+			if (!textures.get(i).isReady()) {
+				return false;
+			}
+		}
+		return true;
+	}
+}
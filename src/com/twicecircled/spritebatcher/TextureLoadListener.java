@@ -0,0 +1,33 @@
+/* Sprite Batcher V1.31
+   Copyright (c) 2013 Tim Wicksteed <tim@twicecircled.com>
+   http:/www.twicecircled.com
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+
+package com.twicecircled.spritebatcher;
+
+public interface TextureLoadListener {
+
+	// Optional, handed to SpriteBatcher.setTextureLoadListener() to track how
+	// long textures take to load. Both methods are called on the GL thread.
+
+	// Called once per texture after it has been uploaded. resourceId is the
+	// id passed into SpriteBatcher's constructor.
+	public void onTextureDecoded(int resourceId, long decodeMillis);
+
+	// Called when every texture has been uploaded, with the time since
+	// loading started in onSurfaceCreated()
+	public void onTexturesLoaded(long elapsedMillis);
+
+}
@@ -0,0 +1,157 @@
+/* Sprite Batcher V1.31
+   Copyright (c) 2013 Tim Wicksteed <tim@twicecircled.com>
+   http:/www.twicecircled.com
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+
+package com.twicecircled.spritebatcher;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.os.SystemClock;
+import android.util.Log;
+
+class TextureLoader {
+	// Decodes texture bitmaps on a worker thread so the GL thread only has
+	// to upload them, see SpriteBatcher.setAsyncLoading(). Decoded bitmaps
+	// wait in a queue until the GL thread polls for them.
+
+	protected static class LoadedBitmap {
+		protected Texture texture;
+		protected Bitmap bitmap;
+		protected long decodeMillis;
+		private int generation;
+	}
+
+	private ExecutorService executor = Executors
+			.newSingleThreadExecutor(new ThreadFactory() {
+				@Override
+				public Thread newThread(Runnable runnable) {
+					Thread thread = new Thread(runnable, "SpriteBatcher loader");
+					// Never keep the app alive or compete with the GL thread
+					thread.setDaemon(true);
+					thread.setPriority(Thread.MIN_PRIORITY);
+					return thread;
+				}
+			});
+	private ConcurrentLinkedQueue<LoadedBitmap> loaded = new ConcurrentLinkedQueue<LoadedBitmap>();
+
+	// Bumped whenever the GL context is recreated, bitmaps decoded for an
+	// older context are thrown away
+	private volatile int generation;
+
+	// Called on the GL thread
+	protected void onSurfaceCreated() {
+		generation++;
+		LoadedBitmap stale;
+		while ((stale = loaded.poll()) != null) {
+			recycle(stale);
+		}
+	}
+
+	// Called on the GL thread
+	protected void load(final Texture texture, final Context context) {
+		texture.state = Texture.LOADING;
+		final int requested = generation;
+		executor.execute(new Runnable() {
+			@Override
+			public void run() {
+				if (requested != generation) {
+					return;
+				}
+				LoadedBitmap result = new LoadedBitmap();
+				result.texture = texture;
+				result.generation = requested;
+				long start = SystemClock.uptimeMillis();
+				try {
+					result.bitmap = texture.loadBitmap(context);
+				} catch (RuntimeException e) {
+					Log.e(SpriteBatcher.TAG, "Error decoding texture", e);
+				}
+				result.decodeMillis = SystemClock.uptimeMillis() - start;
+				loaded.add(result);
+			}
+		});
+	}
+
+	// Next decoded bitmap for the current context, or null if there are none
+	// yet. Called on the GL thread.
+	protected LoadedBitmap poll() {
+		LoadedBitmap result;
+		while ((result = loaded.poll()) != null) {
+			if (result.generation == generation) {
+				return result;
+			}
+			recycle(result);
+		}
+		return null;
+	}
+
+	// Decode all of textures at once, one thread per core, and wait for
+	// them. The bitmaps come back in the same order, null for any that
+	// failed. Decode times are written to decodeMillis.
+	protected static Bitmap[] decodeAll(final List<Texture> textures,
+			final Context context, final long[] decodeMillis) {
+		Bitmap[] bitmaps = new Bitmap[textures.size()];
+		if (textures.isEmpty()) {
+			return bitmaps;
+		}
+		int threads = Math.min(textures.size(), Runtime.getRuntime()
+				.availableProcessors());
+		ExecutorService pool = Executors.newFixedThreadPool(threads);
+		ArrayList<Future<Bitmap>> futures = new ArrayList<Future<Bitmap>>();
+		for (int i = 0; i < textures.size(); i++) {
+			final int index = i;
+			futures.add(pool.submit(new Callable<Bitmap>() {
+				@Override
+				public Bitmap call() {
+					long start = SystemClock.uptimeMillis();
+					Bitmap bitmap = textures.get(index).loadBitmap(context);
+					decodeMillis[index] = SystemClock.uptimeMillis() - start;
+					return bitmap;
+				}
+			}));
+		}
+		pool.shutdown();
+		for (int i = 0; i < futures.size(); i++) {
+			try {
+				bitmaps[i] = futures.get(i).get();
+			} catch (ExecutionException e) {
+				Log.e(SpriteBatcher.TAG, "Error decoding texture",
+						e.getCause());
+			} catch (InterruptedException e) {
+				Log.e(SpriteBatcher.TAG, "Interrupted decoding textures", e);
+				Thread.currentThread().interrupt();
+				break;
+			}
+		}
+		return bitmaps;
+	}
+
+	private void recycle(LoadedBitmap result) {
+		if (result.bitmap != null) {
+			result.bitmap.recycle();
+		}
+	}
+}
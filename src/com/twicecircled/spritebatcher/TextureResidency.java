@@ -0,0 +1,144 @@
+/* Sprite Batcher V1.31
+   Copyright (c) 2013 Tim Wicksteed <tim@twicecircled.com>
+   http:/www.twicecircled.com
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+
+package com.twicecircled.spritebatcher;
+
+import java.util.ArrayList;
+
+import javax.microedition.khronos.opengles.GL10;
+
+class TextureResidency {
+	// Keeps the textures in OpenGL under a memory budget, see
+	// SpriteBatcher.setTextureMemoryBudget(). Each frame the least recently
+	// drawn textures are deleted until the rest fit. A deleted texture is
+	// loaded again the next time something is drawn with it. A texture that
+	// fails to load is tried again after a delay that doubles each time.
+
+	// Delay after the first failed load and the most it grows to, in frames
+	private static final int RETRY_FRAMES = 30;
+	private static final int MAX_RETRY_FRAMES = 1800;
+
+	private long budgetBytes;
+	private int frame;
+
+	// Statistics, counted once per texture per batch
+	private int hits;
+	private int misses;
+	private int loading;
+	private int evictions;
+	private int failures;
+
+	protected TextureResidency(long budgetBytes) {
+		this.budgetBytes = budgetBytes;
+	}
+
+	protected void setBudget(long budgetBytes) {
+		this.budgetBytes = budgetBytes;
+	}
+
+	protected void newFrame() {
+		frame++;
+	}
+
+	// Record that texture is about to be drawn. Returns true if it had been
+	// evicted and needs loading again.
+	protected boolean touch(Texture texture) {
+		texture.lastDrawnFrame = frame;
+		switch (texture.state) {
+		case Texture.UNLOADED:
+			if (frame < texture.retryFrame) {
+				// Failed last time, waiting to try again
+				return false;
+			}
+			misses++;
+			return true;
+		case Texture.LOADING:
+			loading++;
+			return false;
+		default:
+			hits++;
+			texture.loadFailures = 0;
+			return false;
+		}
+	}
+
+	// Record that loading texture failed, so it is not tried again straight
+	// away
+	protected void loadFailed(Texture texture) {
+		failures++;
+		int shift = Math.min(texture.loadFailures, 6);
+		texture.retryFrame = frame
+				+ Math.min(RETRY_FRAMES << shift, MAX_RETRY_FRAMES);
+		texture.loadFailures++;
+	}
+
+	// Delete the least recently drawn textures until the rest fit in the
+	// budget. Textures drawn this frame are never deleted.
+	protected void evict(GL10 gl, ArrayList<Texture> textures) {
+		long resident = getResidentBytes(textures);
+		while (resident > budgetBytes) {
+			Texture oldest = null;
+			for (int i = 0; i < textures.size(); i++) {
+				Texture texture = textures.get(i);
+				if (texture.isReady() && texture.isEvictable()
+						&& texture.lastDrawnFrame < frame
+						&& (oldest == null
+						|| texture.lastDrawnFrame < oldest.lastDrawnFrame)) {
+					oldest = texture;
+				}
+			}
+			if (oldest == null) {
+				// Everything left is in use
+				return;
+			}
+			oldest.deleteTexture(gl);
+			resident -= oldest.residentBytes;
+			evictions++;
+		}
+	}
+
+	protected static long getResidentBytes(ArrayList<Texture> textures) {
+		long resident = 0;
+		for (int i = 0; i < textures.size(); i++) {
+			Texture texture = textures.get(i);
+			if (texture.isReady()) {
+				resident += texture.residentBytes;
+			}
+		}
+		return resident;
+	}
+
+	protected int getHits() {
+		return hits;
+	}
+
+	protected int getMisses() {
+		return misses;
+	}
+
+	protected int getLoading() {
+		return loading;
+	}
+
+	protected int getFailures() {
+		return failures;
+	}
+
+	protected int getEvictions() {
+		return evictions;
+	}
+}
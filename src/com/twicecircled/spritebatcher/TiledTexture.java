@@ -0,0 +1,563 @@
+/* Sprite Batcher V1.31
+   Copyright (c) 2013 Tim Wicksteed <tim@twicecircled.com>
+   http:/www.twicecircled.com
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+
+package com.twicecircled.spritebatcher;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+import javax.microedition.khronos.opengles.GL10;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.BitmapRegionDecoder;
+import android.graphics.Canvas;
+import android.graphics.Rect;
+import android.opengl.GLUtils;
+import android.util.Log;
+
+class TiledTexture extends Texture {
+	// Image too big to keep in OpenGL whole, e.g. a world map, see
+	// SpriteBatcher.setTiledTexture(). The image is split into square tiles
+	// and only those drawn near the view are decoded, with
+	// BitmapRegionDecoder on a worker thread. They are uploaded a few each
+	// frame into slots of a single page texture, so all of the image is
+	// still drawn in one batch, and the least recently drawn are replaced
+	// as the view moves. Each tile carries a one pixel border copied from
+	// its neighbours so filtering does not bleed across slots.
+
+	protected static class DecodedTile {
+		protected int tile;
+		protected Bitmap bitmap;
+		private int generation;
+		// Decoding was tried and gave nothing, as opposed to skipped
+		private boolean failed;
+	}
+
+	private static final int BORDER = 1;
+	private static final int MAX_PAGE_SIZE = 2048;
+	private static final int UPLOADS_PER_FRAME = 2;
+	// Tiles no longer drawn near the view for this many frames are not
+	// decoded after all
+	private static final int STALE_FRAMES = 2;
+
+	private static ExecutorService executor = Executors
+			.newSingleThreadExecutor(new ThreadFactory() {
+				@Override
+				public Thread newThread(Runnable runnable) {
+					Thread thread = new Thread(runnable, "SpriteBatcher tiles");
+					thread.setDaemon(true);
+					thread.setPriority(Thread.MIN_PRIORITY);
+					return thread;
+				}
+			});
+
+	// Texture the encoded image comes from
+	private Texture source;
+	private Context context;
+	private Viewport viewport;
+	// Only used on the worker thread
+	private BitmapRegionDecoder decoder;
+	// Read on the GL thread too, nothing is requested once it is set
+	private volatile boolean decoderFailed;
+
+	private int tileSize;
+	// Image pixels covered by each tile, not counting its border
+	private int step;
+	private int imageWidth;
+	private int imageHeight;
+	private int columns;
+	private int rows;
+	private int slotsPerRow;
+
+	// Slot each tile is in, or -1, and the tile in each slot, or -1
+	private int[] tileSlots;
+	private int[] slotTiles;
+	private int[] slotDrawnFrame;
+	// Written on the GL thread, read by the worker to skip stale requests
+	private int[] tileWantedFrame;
+	private boolean[] tileRequested;
+	// Tiles that could not be decoded, never requested again
+	private boolean[] tileFailed;
+	private boolean failureLogged;
+	private ConcurrentLinkedQueue<DecodedTile> decoded = new ConcurrentLinkedQueue<DecodedTile>();
+	private volatile int frame;
+	// Bumped whenever the tiles in OpenGL are lost, tiles decoded before
+	// then are thrown away
+	private volatile int generation;
+	private boolean warned;
+
+	protected TiledTexture(Texture source, int tileSize) {
+		this.source = source;
+		this.tileSize = tileSize;
+		step = tileSize - 2 * BORDER;
+		resourceId = source.resourceId;
+		format = source.format;
+		dither = source.dither;
+	}
+
+	// Tiles are read and uploaded by the texture itself
+	@Override
+	protected boolean canDecodeInBackground() {
+		return false;
+	}
+
+	@Override
+	protected boolean isEvictable() {
+		return false;
+	}
+
+	@Override
+	protected void setViewport(Viewport viewport) {
+		super.setViewport(viewport);
+		this.viewport = viewport;
+	}
+
+	@Override
+	protected void deleteTexture(GL10 gl) {
+		super.deleteTexture(gl);
+		clearTiles();
+	}
+
+	@Override
+	protected boolean uploadDirect(GL10 gl, Context context) {
+		this.context = context.getApplicationContext();
+		if (tileSlots == null && !readBounds()) {
+			return false;
+		}
+
+		// One page for every tile in view, no larger than the device allows
+		int[] maxSize = new int[1];
+		gl.glGetIntegerv(GL10.GL_MAX_TEXTURE_SIZE, maxSize, 0);
+		int pageSize = Math.max(tileSize,
+				Math.min(MAX_PAGE_SIZE, maxSize[0]));
+		slotsPerRow = pageSize / tileSize;
+		int slots = slotsPerRow * slotsPerRow;
+		slotTiles = new int[slots];
+		slotDrawnFrame = new int[slots];
+		clearTiles();
+
+		// Texture is already bound by SpriteBatcher, allocate it empty
+		gl.glTexImage2D(GL10.GL_TEXTURE_2D, 0, format.glFormat, pageSize,
+				pageSize, 0, format.glFormat, format.glType, null);
+		setDimensions(pageSize, pageSize);
+		residentBytes = pageSize * pageSize * format.bytesPerPixel;
+		return true;
+	}
+
+	private boolean readBounds() {
+		InputStream stream = source.openStream(context);
+		if (stream == null) {
+			Log.e(SpriteBatcher.TAG,
+					"Error: tiled textures must be a drawable or expansion file");
+			return false;
+		}
+		BitmapFactory.Options options = new BitmapFactory.Options();
+		options.inJustDecodeBounds = true;
+		BitmapFactory.decodeStream(stream, null, options);
+		close(stream);
+		if (options.outWidth <= 0 || options.outHeight <= 0) {
+			Log.e(SpriteBatcher.TAG, "Error: could not read tiled image size");
+			return false;
+		}
+		imageWidth = options.outWidth;
+		imageHeight = options.outHeight;
+		columns = (imageWidth + step - 1) / step;
+		rows = (imageHeight + step - 1) / step;
+		tileSlots = new int[columns * rows];
+		tileWantedFrame = new int[columns * rows];
+		tileRequested = new boolean[columns * rows];
+		tileFailed = new boolean[columns * rows];
+		return true;
+	}
+
+	// Forget every tile in OpenGL, along with any still being decoded
+	private void clearTiles() {
+		generation++;
+		if (tileSlots == null) {
+			return;
+		}
+		Arrays.fill(tileSlots, -1);
+		Arrays.fill(tileRequested, false);
+		Arrays.fill(slotTiles, -1);
+		DecodedTile stale;
+		while ((stale = decoded.poll()) != null) {
+			if (stale.bitmap != null) {
+				stale.bitmap.recycle();
+			}
+		}
+	}
+
+	// Called on the GL thread each frame before drawing, uploads tiles that
+	// have finished decoding
+	protected void update(GL10 gl) {
+		frame++;
+		int uploads = 0;
+		DecodedTile tile;
+		while (uploads < UPLOADS_PER_FRAME && (tile = decoded.poll()) != null) {
+			if (tile.generation != generation) {
+				if (tile.bitmap != null) {
+					tile.bitmap.recycle();
+				}
+				continue;
+			}
+			tileRequested[tile.tile] = false;
+			if (tile.failed) {
+				tileFailed[tile.tile] = true;
+				if (!failureLogged && !decoderFailed) {
+					failureLogged = true;
+					Log.e(SpriteBatcher.TAG, "Error: could not decode tile "
+							+ tile.tile + " of tiled texture, it will not be"
+							+ " drawn");
+				}
+			}
+			if (tile.bitmap == null) {
+				continue;
+			}
+			int slot = findSlot();
+			if (slot < 0) {
+				// Every slot was drawn last frame, asked for again if it is
+				// still needed
+				tile.bitmap.recycle();
+				continue;
+			}
+			if (slotTiles[slot] >= 0) {
+				tileSlots[slotTiles[slot]] = -1;
+			}
+			gl.glBindTexture(GL10.GL_TEXTURE_2D, textureId);
+			GLUtils.texSubImage2D(GL10.GL_TEXTURE_2D, 0, getSlotX(slot),
+					getSlotY(slot), tile.bitmap, format.glFormat, format.glType);
+			tile.bitmap.recycle();
+			tileSlots[tile.tile] = slot;
+			slotTiles[slot] = tile.tile;
+			slotDrawnFrame[slot] = frame;
+			uploads++;
+		}
+	}
+
+	// Returns a free slot, else the one drawn longest ago as long as it was
+	// not drawn last frame, else -1
+	private int findSlot() {
+		int oldest = -1;
+		for (int i = 0; i < slotTiles.length; i++) {
+			if (slotTiles[i] < 0) {
+				return i;
+			}
+			if (slotDrawnFrame[i] < frame - 1
+					&& (oldest < 0 || slotDrawnFrame[i] < slotDrawnFrame[oldest])) {
+				oldest = i;
+			}
+		}
+		return oldest;
+	}
+
+	private int getSlotX(int slot) {
+		return (slot % slotsPerRow) * tileSize;
+	}
+
+	private int getSlotY(int slot) {
+		return (slot / slotsPerRow) * tileSize;
+	}
+
+	private void request(final int tile) {
+		if (tileRequested[tile] || tileFailed[tile] || decoderFailed) {
+			return;
+		}
+		tileRequested[tile] = true;
+		final int requested = generation;
+		executor.execute(new Runnable() {
+			@Override
+			public void run() {
+				DecodedTile result = new DecodedTile();
+				result.tile = tile;
+				result.generation = requested;
+				if (requested == generation
+						&& frame - tileWantedFrame[tile] <= STALE_FRAMES) {
+					result.bitmap = decodeTile(tile);
+					result.failed = result.bitmap == null;
+				}
+				// Always reported so the tile can be requested again
+				decoded.add(result);
+			}
+		});
+	}
+
+	// Called on the worker thread. Returns the tile with its border, where
+	// the image ends the border repeats the edge pixels.
+	private Bitmap decodeTile(int tile) {
+		if (decoder == null) {
+			if (decoderFailed) {
+				return null;
+			}
+			InputStream stream = source.openStream(context);
+			if (stream == null) {
+				Log.e(SpriteBatcher.TAG, "Error opening tiled image");
+				decoderFailed = true;
+				return null;
+			}
+			try {
+				decoder = BitmapRegionDecoder.newInstance(stream, false);
+			} catch (IOException e) {
+				Log.e(SpriteBatcher.TAG, "Error opening tiled image", e);
+				decoderFailed = true;
+				return null;
+			} finally {
+				close(stream);
+			}
+		}
+		int left = (tile % columns) * step - BORDER;
+		int top = (tile / columns) * step - BORDER;
+		int right = Math.min(left + tileSize, imageWidth + BORDER);
+		int bottom = Math.min(top + tileSize, imageHeight + BORDER);
+		Rect region = new Rect(Math.max(left, 0), Math.max(top, 0), Math.min(
+				right, imageWidth), Math.min(bottom, imageHeight));
+		BitmapFactory.Options options = new BitmapFactory.Options();
+		options.inPreferredConfig = format.config;
+		options.inDither = dither;
+		Bitmap bitmap = decoder.decodeRegion(region, options);
+		if (bitmap == null) {
+			return null;
+		}
+		if (region.left == left && region.top == top && region.right == right
+				&& region.bottom == bottom) {
+			return format.convert(bitmap, dither);
+		}
+
+		// Edge of the image, draw shifted by a pixel towards each missing
+		// side and then in place on top
+		Bitmap padded = Bitmap.createBitmap(right - left, bottom - top,
+				format.config);
+		Canvas canvas = new Canvas(padded);
+		int x = region.left - left;
+		int y = region.top - top;
+		for (int dx = -1; dx <= 1; dx++) {
+			for (int dy = -1; dy <= 1; dy++) {
+				if (isShift(dx, region.left > left, region.right < right)
+						&& isShift(dy, region.top > top,
+								region.bottom < bottom)
+						&& (dx != 0 || dy != 0)) {
+					canvas.drawBitmap(bitmap, x + dx, y + dy, null);
+				}
+			}
+		}
+		canvas.drawBitmap(bitmap, x, y, null);
+		bitmap.recycle();
+		return padded;
+	}
+
+	private static boolean isShift(int shift, boolean before, boolean after) {
+		return shift == 0 || (shift < 0 && before) || (shift > 0 && after);
+	}
+
+	private static void close(InputStream stream) {
+		try {
+			stream.close();
+		} catch (IOException e) {
+			// Nothing to do
+		}
+	}
+
+	// Draws the part of the image from src into dst, one quad per tile in
+	// OpenGL. Tiles not in yet are requested and left out, so the image
+	// fills in as they arrive. Tiles a little outside the view are
+	// requested too so they are usually in before they scroll into view.
+	private void addTiles(int srcLeft, int srcTop, int srcRight,
+			int srcBottom, int dstX, int dstY, int w, int h, int argb) {
+		if (state != READY || srcRight <= srcLeft || srcBottom <= srcTop) {
+			return;
+		}
+		if (recordingLayer != null) {
+			// Tiles move between slots, so a recording would go stale
+			warnUnsupported("recorded into a SpriteLayer");
+			return;
+		}
+		float scaleX = w / (float) (srcRight - srcLeft);
+		float scaleY = h / (float) (srcBottom - srcTop);
+		float marginX = Math.abs(step * scaleX);
+		float marginY = Math.abs(step * scaleY);
+		int firstColumn = Math.max(0, srcLeft / step - 1);
+		int lastColumn = Math.min(columns - 1, (srcRight - 1) / step + 1);
+		int firstRow = Math.max(0, srcTop / step - 1);
+		int lastRow = Math.min(rows - 1, (srcBottom - 1) / step + 1);
+		SpriteData target = getTarget();
+		for (int row = firstRow; row <= lastRow; row++) {
+			int tileTop = row * step;
+			int tileBottom = Math.min(tileTop + step, imageHeight);
+			float top = dstY + (tileTop - srcTop) * scaleY;
+			float bottom = dstY + (tileBottom - srcTop) * scaleY;
+			for (int column = firstColumn; column <= lastColumn; column++) {
+				int tileLeft = column * step;
+				int tileRight = Math.min(tileLeft + step, imageWidth);
+				float left = dstX + (tileLeft - srcLeft) * scaleX;
+				float right = dstX + (tileRight - srcLeft) * scaleX;
+				if (!isNearView(Math.min(left, right), Math.min(top, bottom),
+						Math.max(left, right), Math.max(top, bottom), marginX,
+						marginY)) {
+					continue;
+				}
+				int tile = row * columns + column;
+				tileWantedFrame[tile] = frame;
+				int slot = tileSlots[tile];
+				if (slot < 0) {
+					request(tile);
+					continue;
+				}
+				slotDrawnFrame[slot] = frame;
+
+				// Part of src inside this tile, dst edges are worked out
+				// from image coordinates so neighbouring quads always meet
+				int l = Math.max(srcLeft, tileLeft);
+				int t = Math.max(srcTop, tileTop);
+				int r = Math.min(srcRight, tileRight);
+				int b = Math.min(srcBottom, tileBottom);
+				if (l >= r || t >= b) {
+					// Only being loaded ahead
+					continue;
+				}
+				int x0 = dstX + Math.round((l - srcLeft) * scaleX);
+				int y0 = dstY + Math.round((t - srcTop) * scaleY);
+				int x1 = dstX + Math.round((r - srcLeft) * scaleX);
+				int y1 = dstY + Math.round((b - srcTop) * scaleY);
+				target.setRegion(getSlotX(slot) + BORDER - tileLeft,
+						getSlotY(slot) + BORDER - tileTop);
+				target.addSprite(l, t, r, b, x0, y0, x1 - x0, y1 - y0, argb);
+			}
+		}
+	}
+
+	private boolean isNearView(float minX, float minY, float maxX,
+			float maxY, float marginX, float marginY) {
+		if (viewport == null || viewport.getWidth() == 0) {
+			// Size not known yet
+			return true;
+		}
+		return maxX >= -marginX && minX <= viewport.getWidth() + marginX
+				&& maxY >= -marginY && minY <= viewport.getHeight() + marginY;
+	}
+
+	private void warnUnsupported(String draw) {
+		if (!warned) {
+			warned = true;
+			Log.w(SpriteBatcher.TAG, "Warning: tiled textures cannot be "
+					+ draw + ", skipping");
+		}
+	}
+
+	// Only axis aligned draws can be split into tiles
+	@Override
+	protected void addSprite(Rect src, Rect dst) {
+		addTiles(src.left, src.top, src.right, src.bottom, dst.left, dst.top,
+				dst.right - dst.left, dst.bottom - dst.top, DEFAULT_ARGB);
+	}
+
+	@Override
+	protected void addSprite(Rect src, Rect dst, int angle) {
+		addSprite(src.left, src.top, src.right, src.bottom, dst.left, dst.top,
+				dst.right - dst.left, dst.bottom - dst.top, angle,
+				DEFAULT_ARGB);
+	}
+
+	@Override
+	protected void addSprite(Rect src, Rect dst, int angle, int argb) {
+		addSprite(src.left, src.top, src.right, src.bottom, dst.left, dst.top,
+				dst.right - dst.left, dst.bottom - dst.top, angle, argb);
+	}
+
+	@Override
+	protected void addSprite(Rect src, int drawX, int drawY, Rect hotRect,
+			int angle, float sizeX, float sizeY) {
+		addSprite(src.left, src.top, src.right, src.bottom, drawX, drawY,
+				hotRect.left, hotRect.top, hotRect.right, hotRect.bottom,
+				angle, sizeX, sizeY, DEFAULT_ARGB);
+	}
+
+	@Override
+	protected void addSprite(Rect src, int drawX, int drawY, Rect hotRect,
+			int angle, float sizeX, float sizeY, int argb) {
+		addSprite(src.left, src.top, src.right, src.bottom, drawX, drawY,
+				hotRect.left, hotRect.top, hotRect.right, hotRect.bottom,
+				angle, sizeX, sizeY, argb);
+	}
+
+	@Override
+	protected void addSprite(int srcLeft, int srcTop, int srcRight,
+			int srcBottom, int dstX, int dstY, int w, int h) {
+		addTiles(srcLeft, srcTop, srcRight, srcBottom, dstX, dstY, w, h,
+				DEFAULT_ARGB);
+	}
+
+	@Override
+	protected void addSprite(int srcLeft, int srcTop, int srcRight,
+			int srcBottom, int dstX, int dstY, int w, int h, int angle,
+			int argb) {
+		if (angle != 0) {
+			warnUnsupported("rotated");
+			return;
+		}
+		addTiles(srcLeft, srcTop, srcRight, srcBottom, dstX, dstY, w, h, argb);
+	}
+
+	@Override
+	protected void addSprite(int srcLeft, int srcTop, int srcRight,
+			int srcBottom, int drawX, int drawY, int hotLeft, int hotTop,
+			int hotRight, int hotBottom, int angle, float sizeX, float sizeY,
+			int argb) {
+		if (angle != 0) {
+			warnUnsupported("rotated");
+			return;
+		}
+		int left = drawX + Math.round(hotLeft * sizeX);
+		int top = drawY + Math.round(hotTop * sizeY);
+		addTiles(srcLeft, srcTop, srcRight, srcBottom, left, top, drawX
+				+ Math.round(hotRight * sizeX) - left,
+				drawY + Math.round(hotBottom * sizeY) - top, argb);
+	}
+
+	@Override
+	protected void drawLine(int srcLeft, int srcTop, int srcRight,
+			int srcBottom, int x1, int y1, int x2, int y2, int width) {
+		warnUnsupported("drawn as lines");
+	}
+
+	@Override
+	protected void drawLine(Rect src, int x1, int y1, int x2, int y2, int width) {
+		warnUnsupported("drawn as lines");
+	}
+
+	@Override
+	protected void drawTile(int dstLeft, int dstTop, int dstRight,
+			int dstBottom, int offsetX, int offsetY, float scale) {
+		warnUnsupported("repeated with drawTile()");
+	}
+
+	@Override
+	protected void drawTile(Rect dst, int offsetX, int offsetY, float scale) {
+		warnUnsupported("repeated with drawTile()");
+	}
+
+	@Override
+	protected Bitmap getBitmap(Context context) {
+		// Never decoded whole, see uploadDirect()
+		return null;
+	}
+}
@@ -0,0 +1,57 @@
+/* Sprite Batcher V1.31
+   Copyright (c) 2013 Tim Wicksteed <tim@twicecircled.com>
+   http:/www.twicecircled.com
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+
+package com.twicecircled.spritebatcher;
+
+class TrigTable {
+	// Sine and cosine for every whole degree. The draw methods only take
+	// integer angles, so a lookup is exact and far cheaper than Math.sin and
+	// Math.cos in double precision.
+
+	private static final float[] SIN = new float[360];
+	private static final float[] COS = new float[360];
+
+	static {
+		for (int i = 0; i < 360; i++) {
+			double radians = (double) i / 180 * Math.PI;
+			SIN[i] = (float) Math.sin(radians);
+			COS[i] = (float) Math.cos(radians);
+		}
+		// Make sure the quarter turns are exact
+		for (int i = 0; i < 360; i += 90) {
+			SIN[i] = Math.round(SIN[i]);
+			COS[i] = Math.round(COS[i]);
+		}
+	}
+
+	protected static float sin(int degrees) {
+		return SIN[normalise(degrees)];
+	}
+
+	protected static float cos(int degrees) {
+		return COS[normalise(degrees)];
+	}
+
+	// Any angle, including negative ones, into the range 0 to 359
+	private static int normalise(int degrees) {
+		int index = degrees % 360;
+		if (index < 0) {
+			index += 360;
+		}
+		return index;
+	}
+}
@@ -0,0 +1,187 @@
+/* Sprite Batcher V1.31
+   Copyright (c) 2013 Tim Wicksteed <tim@twicecircled.com>
+   http:/www.twicecircled.com
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+
+package com.twicecircled.spritebatcher;
+
+import java.nio.IntBuffer;
+
+import javax.microedition.khronos.opengles.GL10;
+import javax.microedition.khronos.opengles.GL11;
+
+class VboRenderer extends QuadRenderer {
+	// Renderer for GL11 devices. The shared quad indices are uploaded once
+	// into an element buffer, and vertex data streams through a single
+	// vertex buffer used as a ring: each batch is written after the previous
+	// one and when the ring is full the buffer is orphaned (glBufferData with
+	// no data) so the driver never has to wait for a draw still using it.
+	// Only touches the GL11 interface, so it can be driven by a recording
+	// GL11 stub without a device.
+
+	// Default ring size, in quads
+	protected static final int DEFAULT_RING_QUADS = 4096;
+
+	private static final int QUAD_BYTES = SpriteData.QUAD_SIZE * 4;
+	private static final int INDEX_BYTES = QuadIndices.MAX_QUADS
+			* QuadIndices.INDICES_PER_QUAD * 2;
+
+	private StagingBuffers stagingBuffers;
+
+	private int[] bufferIds = new int[2];
+	private int vertexBufferId;
+	private int indexBufferId;
+
+	// Ring state, in bytes
+	private int ringSize;
+	private int ringOffset;
+
+	// Number of times the ring has been orphaned
+	private int orphanCount;
+
+	protected VboRenderer(StagingBuffers stagingBuffers) {
+		this.stagingBuffers = stagingBuffers;
+	}
+
+	// Only version 1.1 contexts have buffer objects
+	protected static boolean isSupported(GL10 gl) {
+		return GLVersion.isGL11(gl);
+	}
+
+	@Override
+	protected void onSurfaceCreated(GL10 gl) {
+		GL11 gl11 = (GL11) gl;
+		gl11.glGenBuffers(2, bufferIds, 0);
+		vertexBufferId = bufferIds[0];
+		indexBufferId = bufferIds[1];
+
+		// Indices never change, upload them once
+		gl11.glBindBuffer(GL11.GL_ELEMENT_ARRAY_BUFFER, indexBufferId);
+		gl11.glBufferData(GL11.GL_ELEMENT_ARRAY_BUFFER, INDEX_BYTES,
+				QuadIndices.getBuffer(), GL11.GL_STATIC_DRAW);
+		gl11.glBindBuffer(GL11.GL_ELEMENT_ARRAY_BUFFER, 0);
+
+		// Allocate the vertex ring
+		ringSize = DEFAULT_RING_QUADS * QUAD_BYTES;
+		ringOffset = 0;
+		gl11.glBindBuffer(GL11.GL_ARRAY_BUFFER, vertexBufferId);
+		gl11.glBufferData(GL11.GL_ARRAY_BUFFER, ringSize, null,
+				GL11.GL_STREAM_DRAW);
+		gl11.glBindBuffer(GL11.GL_ARRAY_BUFFER, 0);
+	}
+
+	@Override
+	protected void begin(GL10 gl) {
+		GL11 gl11 = (GL11) gl;
+		gl11.glBindBuffer(GL11.GL_ARRAY_BUFFER, vertexBufferId);
+		gl11.glBindBuffer(GL11.GL_ELEMENT_ARRAY_BUFFER, indexBufferId);
+	}
+
+	@Override
+	protected void end(GL10 gl) {
+		// Unbind so client side arrays work again for anyone else
+		GL11 gl11 = (GL11) gl;
+		gl11.glBindBuffer(GL11.GL_ARRAY_BUFFER, 0);
+		gl11.glBindBuffer(GL11.GL_ELEMENT_ARRAY_BUFFER, 0);
+	}
+
+	@Override
+	protected void drawQuads(GL10 gl, int[] vertices, int firstQuad,
+			int quads) {
+		GL11 gl11 = (GL11) gl;
+		int bytes = quads * QUAD_BYTES;
+
+		// Copy into a direct buffer for upload
+		IntBuffer vertexBuffer = stagingBuffers.vertices(vertices, firstQuad
+				* SpriteData.QUAD_SIZE, quads * SpriteData.QUAD_SIZE);
+
+		if (ringOffset + bytes > ringSize) {
+			// Out of room, orphan the buffer and start again at the front.
+			// Grow it too if this batch would never fit.
+			if (bytes > ringSize) {
+				ringSize = bytes;
+			}
+			gl11.glBufferData(GL11.GL_ARRAY_BUFFER, ringSize, null,
+					GL11.GL_STREAM_DRAW);
+			ringOffset = 0;
+			orphanCount++;
+		}
+		gl11.glBufferSubData(GL11.GL_ARRAY_BUFFER, ringOffset, bytes,
+				vertexBuffer);
+
+		setPointers(gl11, ringOffset);
+		// Indices come from the bound element buffer
+		gl11.glDrawElements(GL10.GL_TRIANGLES, quads
+				* QuadIndices.INDICES_PER_QUAD, GL10.GL_UNSIGNED_SHORT, 0);
+
+		ringOffset += bytes;
+	}
+
+	@Override
+	protected void drawRetained(GL10 gl, SpriteData spriteData,
+			int firstQuad, int quads) {
+		// Retained geometry gets a buffer of its own, uploaded once and then
+		// only again when it is rebuilt
+		GL11 gl11 = (GL11) gl;
+		if (spriteData.getBufferId() == 0) {
+			gl11.glGenBuffers(1, bufferIds, 0);
+			spriteData.setBufferId(bufferIds[0]);
+		}
+		gl11.glBindBuffer(GL11.GL_ARRAY_BUFFER, spriteData.getBufferId());
+		if (spriteData.isBufferDirty()) {
+			int values = spriteData.getQuadCount() * SpriteData.QUAD_SIZE;
+			IntBuffer vertexBuffer = stagingBuffers.vertices(
+					spriteData.getVertices(), 0, values);
+			gl11.glBufferData(GL11.GL_ARRAY_BUFFER, values * 4, vertexBuffer,
+					GL11.GL_STATIC_DRAW);
+			spriteData.setBufferClean();
+		}
+
+		setPointers(gl11, firstQuad * QUAD_BYTES);
+		gl11.glDrawElements(GL10.GL_TRIANGLES, quads
+				* QuadIndices.INDICES_PER_QUAD, GL10.GL_UNSIGNED_SHORT, 0);
+
+		// Back to the streaming ring for ordinary batches
+		gl11.glBindBuffer(GL11.GL_ARRAY_BUFFER, vertexBufferId);
+	}
+
+	@Override
+	protected void releaseRetained(GL10 gl, SpriteData spriteData) {
+		if (spriteData.getBufferId() != 0) {
+			bufferIds[0] = spriteData.getBufferId();
+			((GL11) gl).glDeleteBuffers(1, bufferIds, 0);
+			spriteData.setBufferId(0);
+		}
+	}
+
+	// Pointers are byte offsets into the bound vertex buffer
+	private void setPointers(GL11 gl11, int offset) {
+		gl11.glVertexPointer(2, GL10.GL_FLOAT, SpriteData.STRIDE, offset);
+		gl11.glTexCoordPointer(2, GL10.GL_FLOAT, SpriteData.STRIDE, offset
+				+ SpriteData.TEXTURE_COORD_OFFSET * 4);
+		if (secondTexCoords) {
+			gl11.glClientActiveTexture(GL10.GL_TEXTURE1);
+			gl11.glTexCoordPointer(2, GL10.GL_FLOAT, SpriteData.STRIDE,
+					offset + SpriteData.TEXTURE_COORD_OFFSET * 4);
+			gl11.glClientActiveTexture(GL10.GL_TEXTURE0);
+		}
+		gl11.glColorPointer(4, GL10.GL_UNSIGNED_BYTE, SpriteData.STRIDE,
+				offset + SpriteData.COLOUR_OFFSET * 4);
+	}
+
+	protected int getOrphanCount() {
+		return orphanCount;
+	}
+}
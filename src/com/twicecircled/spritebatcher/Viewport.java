@@ -0,0 +1,95 @@
+/* Sprite Batcher V1.31
+   Copyright (c) 2013 Tim Wicksteed <tim@twicecircled.com>
+   http:/www.twicecircled.com
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+
+package com.twicecircled.spritebatcher;
+
+class Viewport {
+	// The visible area, used to throw away sprites that would be drawn
+	// entirely off screen before any of their vertex data is written. Shared
+	// by every Texture's SpriteData. Also counts what it sees each frame.
+
+	private boolean enabled;
+	private int margin;
+	private int width;
+	private int height;
+
+	// Visible bounds including margin, y is down like canvas
+	private float left;
+	private float top;
+	private float right;
+	private float bottom;
+
+	// Counters for the frame in progress and the last finished frame
+	private int submitted;
+	private int culled;
+	private int lastSubmitted;
+	private int lastCulled;
+
+	protected void setCulling(boolean enabled, int margin) {
+		this.enabled = enabled;
+		this.margin = margin;
+		updateBounds();
+	}
+
+	protected void setSize(int width, int height) {
+		this.width = width;
+		this.height = height;
+		updateBounds();
+	}
+
+	private void updateBounds() {
+		left = -margin;
+		top = -margin;
+		right = width + margin;
+		bottom = height + margin;
+	}
+
+	protected void newFrame() {
+		lastSubmitted = submitted;
+		lastCulled = culled;
+		submitted = 0;
+		culled = 0;
+	}
+
+	// Returns false if the bounds are entirely outside the visible area and
+	// the sprite should be skipped
+	protected boolean isVisible(float minX, float minY, float maxX, float maxY) {
+		submitted++;
+		if (enabled
+				&& (maxX < left || minX > right || maxY < top || minY > bottom)) {
+			culled++;
+			return false;
+		}
+		return true;
+	}
+
+	protected int getWidth() {
+		return width;
+	}
+
+	protected int getHeight() {
+		return height;
+	}
+
+	protected int getLastSubmitted() {
+		return lastSubmitted;
+	}
+
+	protected int getLastCulled() {
+		return lastCulled;
+	}
+}
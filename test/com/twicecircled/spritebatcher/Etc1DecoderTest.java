@@ -0,0 +1,152 @@
+/* Sprite Batcher V1.31
+   Copyright (c) 2013 Tim Wicksteed <tim@twicecircled.com>
+   http:/www.twicecircled.com
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+
+package com.twicecircled.spritebatcher;
+
+public class Etc1DecoderTest {
+	// Checks PKM header parsing and the CPU ETC1 decoder against blocks
+	// worked out by hand from the Khronos ETC1 block layout. Not part of the
+	// library, it lives outside src and runs as a plain main() on a desktop
+	// JVM, no device or GPU needed. From the project root:
+	//
+	// javac -cp <sdk>/platforms/android-17/android.jar -d bin/test \
+	//     src/com/twicecircled/spritebatcher/*.java \
+	//     test/com/twicecircled/spritebatcher/*.java
+	// java -cp bin/test com.twicecircled.spritebatcher.Etc1DecoderTest
+	//
+	// Exits with an AssertionError on the first failure.
+
+	// 8x4 image, cropped to 7x3, two blocks side by side
+	private static final byte[] HEADER = { 'P', 'K', 'M', ' ', '1', '0', 0,
+			0, 0, 8, 0, 4, 0, 7, 0, 3 };
+
+	// Individual mode, no flip. Left half is 4 bit colour (15, 0, 0) with
+	// table 0, right half (0, 15, 0) with table 7. Every pixel index is 0,
+	// so each half adds its table's small positive modifier.
+	private static final byte[] INDIVIDUAL_BLOCK = { (byte) 0xf0, 0x0f, 0x00,
+			0x1c, 0x00, 0x00, 0x00, 0x00 };
+
+	// Differential mode, flipped so the halves are top and bottom. Top is 5
+	// bit colour (16, 0, 31) with table 1, bottom adds (-1, +3, -4) to give
+	// (15, 3, 27) with table 2. Pixel (0,0) has index 3, (1,0) index 1 and
+	// (0,3) index 2, the rest 0.
+	private static final byte[] DIFFERENTIAL_BLOCK = { (byte) 0x87, 0x03,
+			(byte) 0xfc, 0x2b, 0x00, 0x09, 0x00, 0x11 };
+
+	public static void main(String[] args) {
+		parsesHeader();
+		rejectsBadHeaders();
+		decodesIndividualBlock();
+		decodesDifferentialBlock();
+		System.out.println("Etc1DecoderTest passed");
+	}
+
+	private static void parsesHeader() {
+		PkmHeader header = PkmHeader.parse(getFile());
+		check(header.encodedWidth == 8, "encoded width");
+		check(header.encodedHeight == 4, "encoded height");
+		check(header.width == 7, "width");
+		check(header.height == 3, "height");
+		check(header.getDataSize() == 16, "data size");
+	}
+
+	private static void rejectsBadHeaders() {
+		byte[] magic = getFile();
+		magic[0] = 'X';
+		checkRejected(magic, "bad magic");
+
+		byte[] version = getFile();
+		version[5] = '1';
+		checkRejected(version, "version 11");
+
+		byte[] format = getFile();
+		format[7] = 1;
+		checkRejected(format, "not ETC1 RGB");
+
+		byte[] unaligned = getFile();
+		unaligned[9] = 6;
+		checkRejected(unaligned, "width not a multiple of 4");
+
+		byte[] cropped = getFile();
+		cropped[13] = 9;
+		checkRejected(cropped, "width bigger than encoded width");
+
+		byte[] truncated = new byte[PkmHeader.SIZE + 8];
+		System.arraycopy(getFile(), 0, truncated, 0, truncated.length);
+		checkRejected(truncated, "truncated data");
+
+		checkRejected(new byte[8], "shorter than a header");
+	}
+
+	private static void decodesIndividualBlock() {
+		int[] pixels = decode();
+		for (int y = 0; y < 4; y++) {
+			for (int x = 0; x < 4; x++) {
+				// 255 + 2 clamps, 0 + 2
+				int expected = x < 2 ? 0xffff0202 : 0xff2fff2f;
+				checkPixel(pixels, x, y, expected);
+			}
+		}
+	}
+
+	private static void decodesDifferentialBlock() {
+		int[] pixels = decode();
+		// Top half, base (132, 0, 255), table 1 is 5, 17, -5, -17
+		checkPixel(pixels, 4, 0, 0xff7300ee); // index 3, -17
+		checkPixel(pixels, 5, 0, 0xff9511ff); // index 1, +17
+		checkPixel(pixels, 6, 1, 0xff8905ff); // index 0, +5
+		// Bottom half, base (123, 24, 222), table 2 is 9, 29, -9, -29
+		checkPixel(pixels, 4, 3, 0xff720fd5); // index 2, -9
+		checkPixel(pixels, 7, 2, 0xff8421e7); // index 0, +9
+	}
+
+	private static int[] decode() {
+		byte[] file = getFile();
+		return Etc1Decoder.decode(file, PkmHeader.SIZE,
+				PkmHeader.parse(file));
+	}
+
+	private static byte[] getFile() {
+		byte[] file = new byte[PkmHeader.SIZE + 16];
+		System.arraycopy(HEADER, 0, file, 0, PkmHeader.SIZE);
+		System.arraycopy(INDIVIDUAL_BLOCK, 0, file, PkmHeader.SIZE, 8);
+		System.arraycopy(DIFFERENTIAL_BLOCK, 0, file, PkmHeader.SIZE + 8, 8);
+		return file;
+	}
+
+	private static void checkRejected(byte[] data, String what) {
+		try {
+			PkmHeader.parse(data);
+		} catch (IllegalArgumentException e) {
+			return;
+		}
+		throw new AssertionError("Accepted header with " + what);
+	}
+
+	private static void checkPixel(int[] pixels, int x, int y, int expected) {
+		int actual = pixels[y * 8 + x];
+		check(actual == expected, "pixel " + x + "," + y + " was "
+				+ Integer.toHexString(actual) + ", expected "
+				+ Integer.toHexString(expected));
+	}
+
+	private static void check(boolean condition, String what) {
+		if (!condition) {
+			throw new AssertionError(what);
+		}
+	}
+}
@@ -0,0 +1,278 @@
+/* Sprite Batcher V1.31
+   Copyright (c) 2013 Tim Wicksteed <tim@twicecircled.com>
+   http:/www.twicecircled.com
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+
+package com.twicecircled.spritebatcher;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+
+import javax.microedition.khronos.opengles.GL10;
+import javax.microedition.khronos.opengles.GL11;
+
+public class VboRendererTest {
+	// Drives VboRenderer with a recording GL11 stub and checks the buffer
+	// object calls it makes: the one time set up, the streaming ring and
+	// when it is orphaned or grown, and retained buffers. Not part of the
+	// library, it lives outside src and runs as a plain main() on a desktop
+	// JVM, no device or GPU needed. From the project root:
+	//
+	// javac -cp <sdk>/platforms/android-17/android.jar -d bin/test \
+	//     src/com/twicecircled/spritebatcher/*.java \
+	//     test/com/twicecircled/spritebatcher/*.java
+	// java -cp bin/test:<sdk>/platforms/android-17/android.jar \
+	//     com.twicecircled.spritebatcher.VboRendererTest
+	//
+	// android.jar is needed at run time for the GL10 and GL11 interfaces
+	// only. Exits with an AssertionError on the first failure.
+
+	private static final int QUAD_BYTES = SpriteData.QUAD_SIZE * 4;
+	private static final int RING_BYTES = VboRenderer.DEFAULT_RING_QUADS
+			* QUAD_BYTES;
+
+	// Vertex ring and element buffer ids handed out by onSurfaceCreated
+	private static final int RING_ID = 1;
+	private static final int INDEX_ID = 2;
+
+	public static void main(String[] args) {
+		Recorder recorder = new Recorder();
+		GL11 gl = recorder.getGL();
+		check(VboRenderer.isSupported(gl), "GL 1.1 recognised");
+
+		VboRenderer renderer = new VboRenderer(new StagingBuffers());
+		setsUp(recorder, gl, renderer);
+		streamsThroughRing(recorder, gl, renderer);
+		orphansWhenFull(recorder, gl, renderer);
+		growsForHugeBatch(recorder, gl, renderer);
+		keepsRetainedBuffers(recorder, gl, renderer);
+		System.out.println("VboRendererTest passed");
+	}
+
+	private static void setsUp(Recorder recorder, GL11 gl,
+			VboRenderer renderer) {
+		recorder.calls.clear();
+		renderer.onSurfaceCreated(gl);
+		recorder.expect("glGenBuffers", 2);
+		recorder.expect("glBindBuffer", GL11.GL_ELEMENT_ARRAY_BUFFER,
+				INDEX_ID);
+		Call indices = recorder.expect("glBufferData",
+				GL11.GL_ELEMENT_ARRAY_BUFFER, QuadIndices.MAX_QUADS
+						* QuadIndices.INDICES_PER_QUAD * 2);
+		check(indices.args[2] != null, "indices uploaded");
+		check(indices.args[3].equals(GL11.GL_STATIC_DRAW), "indices static");
+		recorder.expect("glBindBuffer", GL11.GL_ELEMENT_ARRAY_BUFFER, 0);
+		recorder.expect("glBindBuffer", GL11.GL_ARRAY_BUFFER, RING_ID);
+		expectOrphan(recorder, RING_BYTES);
+		recorder.expect("glBindBuffer", GL11.GL_ARRAY_BUFFER, 0);
+		recorder.expectEnd();
+	}
+
+	private static void streamsThroughRing(Recorder recorder, GL11 gl,
+			VboRenderer renderer) {
+		recorder.calls.clear();
+		renderer.begin(gl);
+		recorder.expect("glBindBuffer", GL11.GL_ARRAY_BUFFER, RING_ID);
+		recorder.expect("glBindBuffer", GL11.GL_ELEMENT_ARRAY_BUFFER,
+				INDEX_ID);
+		// Four batches of 1000 quads fit one after another
+		int quads = 1000;
+		for (int i = 0; i < 4; i++) {
+			renderer.drawQuads(gl, new int[quads * SpriteData.QUAD_SIZE], 0,
+					quads);
+			expectBatch(recorder, i * quads * QUAD_BYTES, quads);
+		}
+		recorder.expectEnd();
+		check(renderer.getOrphanCount() == 0, "no orphan while it fits");
+	}
+
+	private static void orphansWhenFull(Recorder recorder, GL11 gl,
+			VboRenderer renderer) {
+		// 4000 quads are in the ring, 1000 more do not fit in 4096
+		recorder.calls.clear();
+		int quads = 1000;
+		renderer.drawQuads(gl, new int[quads * SpriteData.QUAD_SIZE], 0,
+				quads);
+		expectOrphan(recorder, RING_BYTES);
+		expectBatch(recorder, 0, quads);
+		recorder.expectEnd();
+		check(renderer.getOrphanCount() == 1, "orphaned once");
+	}
+
+	private static void growsForHugeBatch(Recorder recorder, GL11 gl,
+			VboRenderer renderer) {
+		// Bigger than the whole ring, which grows to fit it
+		recorder.calls.clear();
+		int quads = VboRenderer.DEFAULT_RING_QUADS + 904;
+		renderer.drawQuads(gl, new int[quads * SpriteData.QUAD_SIZE], 0,
+				quads);
+		expectOrphan(recorder, quads * QUAD_BYTES);
+		expectBatch(recorder, 0, quads);
+		recorder.expectEnd();
+		check(renderer.getOrphanCount() == 2, "orphaned again");
+
+		// Ring wraps again at its new size
+		recorder.calls.clear();
+		renderer.drawQuads(gl, new int[SpriteData.QUAD_SIZE], 0, 1);
+		expectOrphan(recorder, quads * QUAD_BYTES);
+		expectBatch(recorder, 0, 1);
+		recorder.expectEnd();
+
+		recorder.calls.clear();
+		renderer.end(gl);
+		recorder.expect("glBindBuffer", GL11.GL_ARRAY_BUFFER, 0);
+		recorder.expect("glBindBuffer", GL11.GL_ELEMENT_ARRAY_BUFFER, 0);
+		recorder.expectEnd();
+	}
+
+	private static void keepsRetainedBuffers(Recorder recorder, GL11 gl,
+			VboRenderer renderer) {
+		SpriteData spriteData = new SpriteData();
+		spriteData.setDimensions(64, 64);
+		spriteData.addSprite(0, 0, 16, 16, 0, 0, 16, 16, 0xffffffff);
+		spriteData.addSprite(0, 0, 16, 16, 16, 0, 16, 16, 0xffffffff);
+
+		// First draw gets a buffer of its own and uploads once
+		recorder.calls.clear();
+		renderer.drawRetained(gl, spriteData, 0, 2);
+		recorder.expect("glGenBuffers", 1);
+		int id = spriteData.getBufferId();
+		check(id != 0, "retained buffer id kept");
+		recorder.expect("glBindBuffer", GL11.GL_ARRAY_BUFFER, id);
+		Call upload = recorder.expect("glBufferData", GL11.GL_ARRAY_BUFFER,
+				2 * QUAD_BYTES);
+		check(upload.args[3].equals(GL11.GL_STATIC_DRAW), "retained static");
+		expectPointers(recorder, 0);
+		recorder.expect("glDrawElements", GL10.GL_TRIANGLES,
+				2 * QuadIndices.INDICES_PER_QUAD);
+		recorder.expect("glBindBuffer", GL11.GL_ARRAY_BUFFER, RING_ID);
+		recorder.expectEnd();
+
+		// Then it is only bound and drawn
+		recorder.calls.clear();
+		renderer.drawRetained(gl, spriteData, 0, 2);
+		recorder.expect("glBindBuffer", GL11.GL_ARRAY_BUFFER, id);
+		expectPointers(recorder, 0);
+		recorder.expect("glDrawElements", GL10.GL_TRIANGLES,
+				2 * QuadIndices.INDICES_PER_QUAD);
+		recorder.expect("glBindBuffer", GL11.GL_ARRAY_BUFFER, RING_ID);
+		recorder.expectEnd();
+
+		// And deleted when released
+		recorder.calls.clear();
+		renderer.releaseRetained(gl, spriteData);
+		Call delete = recorder.expect("glDeleteBuffers", 1);
+		check(((int[]) delete.args[1])[(Integer) delete.args[2]] == id,
+				"retained buffer deleted");
+		recorder.expectEnd();
+		check(spriteData.getBufferId() == 0, "retained buffer id cleared");
+	}
+
+	// Ring orphaned, glBufferData with no data
+	private static void expectOrphan(Recorder recorder, int bytes) {
+		Call orphan = recorder.expect("glBufferData", GL11.GL_ARRAY_BUFFER,
+				bytes);
+		check(orphan.args[2] == null, "orphan has no data");
+		check(orphan.args[3].equals(GL11.GL_STREAM_DRAW), "ring streams");
+	}
+
+	private static void expectBatch(Recorder recorder, int offset, int quads) {
+		recorder.expect("glBufferSubData", GL11.GL_ARRAY_BUFFER, offset,
+				quads * QUAD_BYTES);
+		expectPointers(recorder, offset);
+		Call draw = recorder.expect("glDrawElements", GL10.GL_TRIANGLES,
+				quads * QuadIndices.INDICES_PER_QUAD, GL10.GL_UNSIGNED_SHORT);
+		check(draw.args[3].equals(0), "indices from the element buffer");
+	}
+
+	private static void expectPointers(Recorder recorder, int offset) {
+		recorder.expect("glVertexPointer", 2, GL10.GL_FLOAT,
+				SpriteData.STRIDE, offset);
+		recorder.expect("glTexCoordPointer", 2, GL10.GL_FLOAT,
+				SpriteData.STRIDE, offset + SpriteData.TEXTURE_COORD_OFFSET
+						* 4);
+		recorder.expect("glColorPointer", 4, GL10.GL_UNSIGNED_BYTE,
+				SpriteData.STRIDE, offset + SpriteData.COLOUR_OFFSET * 4);
+	}
+
+	private static void check(boolean condition, String what) {
+		if (!condition) {
+			throw new AssertionError(what);
+		}
+	}
+
+	private static class Call {
+		private String name;
+		private Object[] args;
+	}
+
+	// Records every GL call in order. glGenBuffers hands out 1, 2, 3...
+	private static class Recorder implements InvocationHandler {
+		private ArrayList<Call> calls = new ArrayList<Call>();
+		private int nextBufferId = 1;
+
+		private GL11 getGL() {
+			return (GL11) Proxy.newProxyInstance(
+					VboRendererTest.class.getClassLoader(),
+					new Class<?>[] { GL11.class }, this);
+		}
+
+		@Override
+		public Object invoke(Object proxy, Method method, Object[] args) {
+			String name = method.getName();
+			if (name.equals("glGetString")) {
+				return "OpenGL ES-CM 1.1";
+			}
+			if (name.equals("glGenBuffers")) {
+				int[] ids = (int[]) args[1];
+				for (int i = 0; i < (Integer) args[0]; i++) {
+					ids[(Integer) args[2] + i] = nextBufferId++;
+				}
+			}
+			Call call = new Call();
+			call.name = name;
+			call.args = args == null ? new Object[0] : args;
+			calls.add(call);
+			Class<?> type = method.getReturnType();
+			if (type == boolean.class) {
+				return false;
+			} else if (type == int.class) {
+				return 0;
+			}
+			return null;
+		}
+
+		// Takes the next call, which must be name with these leading int
+		// arguments
+		private Call expect(String name, int... leading) {
+			check(!calls.isEmpty(), "expected " + name + ", no more calls");
+			Call call = calls.remove(0);
+			check(call.name.equals(name), "expected " + name + ", got "
+					+ call.name);
+			for (int i = 0; i < leading.length; i++) {
+				check(call.args[i].equals(leading[i]), name + " argument " + i
+						+ " was " + call.args[i] + ", expected " + leading[i]);
+			}
+			return call;
+		}
+
+		private void expectEnd() {
+			check(calls.isEmpty(), "unexpected " + (calls.isEmpty() ? ""
+					: calls.get(0).name));
+		}
+	}
+}